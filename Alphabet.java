@@ -1,9 +1,15 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may contain characters outside the Basic
+ *  Multilingual Plane.  Lookups take constant time: alphabets whose
+ *  characters span a small range of code points use a directly indexed
+ *  table, and others use an open-addressing hash table.
  *  @author Miranda Cheung
  */
 class Alphabet {
@@ -11,15 +17,7 @@ class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        this._chars = chars;
-        for (int i = 0; i < chars.length(); i++) {
-            if (chars.substring(i + 1).contains("" + toChar(i) + "")) {
-                throw new EnigmaException("no repeats in alphabet");
-            }
-        }
-        if (chars.contains("(") || chars.contains(")") || chars.contains("*")) {
-            throw error("cannot contain *, ( or ) symbols");
-        }
+        index(chars);
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -27,46 +25,90 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** The alphabet containing the chars CHARS, which may be any. */
+    private Alphabet(char[] chars) {
+        _special = true;
+        index(new String(chars));
+    }
+
+    /** Returns the alphabet of the 256 byte values, in which the index of
+     *  each byte (taken as unsigned) is its value. */
+    static Alphabet bytes() {
+        return BYTES;
+    }
+
+    /** Returns true iff this is the alphabet of bytes(). */
+    boolean isBytes() {
+        return this == BYTES;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        boolean contained = false;
-        for (int i = 0; i < size(); i++) {
-            if (toChar(i) == ch) {
-                contained = true;
-            }
-        }
-        return contained;
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        if (index >= _chars.length() || index < 0) {
+        int cp = toCodePoint(index);
+        if (cp > Character.MAX_VALUE) {
+            throw error("character %d is not a single char", index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index >= _codePoints.length || index < 0) {
             throw new EnigmaException("index out of bounds");
         }
-        return _chars.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!contains(ch)) {
+        int pos = indexOf(ch);
+        if (pos < 0) {
             throw new EnigmaException("letter does not exist in alphabet");
         }
-        int pos = -1;
-        for (int i = 0; i < size(); i++) {
-            char x = toChar(i);
-            if (x == ch) {
-                pos = i;
-                break;
+        return pos;
+    }
+
+    /** Returns the index of the character whose code point is CODEPOINT,
+     *  or -1 if it is not in the alphabet. */
+    int indexOf(int codePoint) {
+        if (_direct != null) {
+            int k = codePoint - _min;
+            if (k < 0 || k >= _direct.length) {
+                return -1;
             }
+            return _direct[k];
         }
-        return pos;
+        if (codePoint < 0) {
+            return -1;
+        }
+        int mask = _keys.length - 1;
+        for (int h = hash(codePoint) & mask; ; h = (h + 1) & mask) {
+            int key = _keys[h];
+            if (key == codePoint) {
+                return _values[h];
+            } else if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /** Returns true iff every character of this alphabet is in the Basic
+     *  Multilingual Plane, and so fits in a single char. */
+    boolean isBmp() {
+        return _bmp;
     }
 
     /** Returns the alphabet of this machine. */
@@ -78,9 +120,114 @@ class Alphabet {
      * @param chars is letters in the alphabet
      */
     void setAlphabetString(String chars) {
+        index(chars);
+    }
+
+    /** Set this alphabet to the characters of CHARS and build the
+     *  lookup table from code points to indices. */
+    private void index(String chars) {
+        int n = chars.codePointCount(0, chars.length());
+        int[] codePoints = new int[n];
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int i = 0, k = 0; k < n; k++) {
+            int cp = chars.codePointAt(i);
+            if (!_special && (cp == '(' || cp == ')' || cp == '*')) {
+                throw error("cannot contain *, ( or ) symbols");
+            }
+            codePoints[k] = cp;
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+            i += Character.charCount(cp);
+        }
         _chars = chars;
+        _codePoints = codePoints;
+        _bmp = max <= Character.MAX_VALUE;
+        _direct = null;
+        _keys = null;
+        _values = null;
+        if (n == 0) {
+            _min = 0;
+            _direct = new int[0];
+        } else if ((long) max - min < Math.max(DIRECT_RANGE, 4L * n)) {
+            _min = min;
+            _direct = new int[max - min + 1];
+            Arrays.fill(_direct, -1);
+            for (int k = 0; k < n; k++) {
+                int slot = codePoints[k] - min;
+                if (_direct[slot] >= 0) {
+                    throw new EnigmaException("no repeats in alphabet");
+                }
+                _direct[slot] = k;
+            }
+        } else {
+            int cap = Integer.highestOneBit(2 * n - 1) << 1;
+            _keys = new int[cap];
+            _values = new int[cap];
+            Arrays.fill(_keys, EMPTY);
+            for (int k = 0; k < n; k++) {
+                int h = hash(codePoints[k]) & (cap - 1);
+                while (_keys[h] != EMPTY) {
+                    if (_keys[h] == codePoints[k]) {
+                        throw new EnigmaException("no repeats in alphabet");
+                    }
+                    h = (h + 1) & (cap - 1);
+                }
+                _keys[h] = codePoints[k];
+                _values[h] = k;
+            }
+        }
+    }
+
+    /** Returns a well-mixed hash of code point CP. */
+    private static int hash(int cp) {
+        int h = cp * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
+    /** Largest span of code points that is always indexed directly. */
+    private static final int DIRECT_RANGE = 1 << 12;
+
+    /** Number of byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** The alphabet of all 256 byte values, whose character number K is
+     *  U+0000 + K, for converting binary data (see ByteCipher).  It is
+     *  the only alphabet that may contain '*', '(' and ')', and it can
+     *  only be had from bytes(). */
+    private static final Alphabet BYTES;
+    static {
+        char[] chars = new char[BYTE_VALUES];
+        for (int k = 0; k < BYTE_VALUES; k++) {
+            chars[k] = (char) k;
+        }
+        BYTES = new Alphabet(chars);
+    }
+
+    /** Marks an unused slot of _keys. */
+    private static final int EMPTY = -1;
+
+    /** True iff I may contain '*', '(' and ')'. */
+    private boolean _special;
+
     /** Contains the alphabet of this machine. */
     private String _chars;
+
+    /** True iff all my characters are in the Basic Multilingual Plane. */
+    private boolean _bmp;
+
+    /** The code point of each character, by index. */
+    private int[] _codePoints;
+
+    /** When non-null, _direct[c - _min] is the index of code point c, or
+     *  -1 if c is not in the alphabet. */
+    private int[] _direct;
+
+    /** Smallest code point in the alphabet. */
+    private int _min;
+
+    /** Open-addressing table of code points, used when _direct is null. */
+    private int[] _keys;
+
+    /** The index of the code point in the corresponding slot of _keys. */
+    private int[] _values;
 }
@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Miranda Cheung
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testUpper() {
+        Alphabet a = new Alphabet();
+        assertEquals(26, a.size());
+        for (int i = 0; i < 26; i++) {
+            char c = (char) ('A' + i);
+            assertTrue(a.contains(c));
+            assertEquals(i, a.toInt(c));
+            assertEquals(c, a.toChar(i));
+        }
+        assertFalse(a.contains('a'));
+        assertEquals(-1, a.indexOf('*'));
+    }
+
+    @Test
+    public void testSparseAlphabet() {
+        String chars = "A\u4e00\uffee"
+            + new String(Character.toChars(0x1f600)) + "z";
+        Alphabet a = new Alphabet(chars);
+        assertEquals(5, a.size());
+        assertEquals(3, a.indexOf(0x1f600));
+        assertEquals(0x1f600, a.toCodePoint(3));
+        assertEquals(1, a.toInt('\u4e00'));
+        assertEquals(4, a.toInt('z'));
+        assertEquals(-1, a.indexOf('B'));
+        assertEquals(-1, a.indexOf(0x1f601));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            chars.appendCodePoint(0x10000 + 37 * i);
+        }
+        Alphabet a = new Alphabet(chars.toString());
+        assertEquals(5000, a.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, a.indexOf(0x10000 + 37 * i));
+            assertEquals(-1, a.indexOf(0x10001 + 37 * i));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeats() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseRepeats() {
+        new Alphabet("A\u4e00z\u4e00");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testParens() {
+        new Alphabet("AB(C");
+    }
+}
@@ -0,0 +1,194 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An engine that converts many independent messages at once, all with
+ *  the same rotors, ring settings and plugboard but each starting from
+ *  its own rotor settings.  Messages are assigned to lanes, LANES at a
+ *  time, and converted one character position at a time across all the
+ *  lanes, with the state of each rotor held as an array of offsets
+ *  (setting less ring setting) indexed by lane.  Every step of the
+ *  conversion is then a short loop over the lanes with no branches:
+ *  wiring lookups index tables of twice the alphabet size by input plus
+ *  offset, as in CompiledMachine, so applying and removing an offset is
+ *  an add, a lookup and a subtract, and stepping adds the notch bits of
+ *  the neighbouring rotors.  Each message is converted exactly as
+ *  Machine.convert would convert it.
+ *  @author Miranda Cheung
+ */
+class BatchMachine {
+
+    /** An engine for messages converted on MACHINE, whose rotors and
+     *  plugboard must already be set.  Its current rotor settings are
+     *  not used. */
+    BatchMachine(Machine machine) {
+        int n = machine.alphabet().size();
+        _size = n;
+        _numRotors = machine.numRotors();
+        _first = _numRotors - machine.numPawls();
+        _plug = new int[n];
+        _reflector = new int[n];
+        _mod = new int[2 * n];
+        for (int c = 0; c < n; c++) {
+            _plug[c] = machine.plugboard().permute(c);
+            _reflector[c] = machine.rotor(0).convertForward(c, 0);
+            _mod[c] = _mod[c + n] = c;
+        }
+        _rings = new int[_numRotors];
+        _forward = new int[_numRotors][2 * n];
+        _backward = new int[_numRotors][2 * n];
+        _kicks = new int[_numRotors][];
+        for (int k = 1; k < _numRotors; k++) {
+            Permutation perm = machine.rotor(k).permutation();
+            boolean[] notches = machine.rotor(k).notches();
+            _rings[k] = machine.ring(k);
+            for (int i = 0; i < 2 * n; i++) {
+                _forward[k][i] = perm.permute(i % n) + n;
+                _backward[k][i] = perm.invert(i % n) + n;
+            }
+            _kicks[k] = new int[n];
+            for (int s = 0; s < n && notches != null; s++) {
+                _kicks[k][s] = notches[(s + _rings[k]) % n] ? 1 : 0;
+            }
+        }
+        if (_first < _numRotors) {
+            _kicks[_first] = new int[n];
+        }
+        _offsets = new int[_numRotors][LANES];
+        _lanes = new int[LANES];
+        _msgs = new int[LANES][];
+    }
+
+    /** Replace each MSGS[I], a message of alphabet indices, with its
+     *  encoding/decoding starting from the rotor settings SETTINGS[I],
+     *  indexed by slot as Machine.settings() returns them. */
+    void convert(int[][] msgs, int[][] settings) {
+        if (msgs.length != settings.length) {
+            throw new EnigmaException("need one setting per message");
+        }
+        Integer[] order = new Integer[msgs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> msgs[b].length - msgs[a].length);
+        for (int start = 0; start < order.length; start += LANES) {
+            int width = Math.min(LANES, order.length - start);
+            for (int l = 0; l < width; l++) {
+                int i = order[start + l];
+                _msgs[l] = msgs[i];
+                for (int k = 1; k < _numRotors; k++) {
+                    int s = settings[i][k] - _rings[k];
+                    _offsets[k][l] = s < 0 ? s + _size : s;
+                }
+            }
+            convertLanes(width);
+        }
+        Arrays.fill(_msgs, null);
+    }
+
+    /** Convert the messages in the first WIDTH lanes, which are in order
+     *  of decreasing length, from the offsets in _offsets. */
+    private void convertLanes(int width) {
+        int[] x = _lanes, mod = _mod, plug = _plug;
+        int active = width;
+        for (int t = 0; ; t++) {
+            while (active > 0 && _msgs[active - 1].length <= t) {
+                active--;
+            }
+            if (active == 0) {
+                return;
+            }
+            step(active);
+            for (int l = 0; l < active; l++) {
+                x[l] = plug[_msgs[l][t]];
+            }
+            for (int k = _numRotors - 1; k > 0; k--) {
+                int[] f = _forward[k], s = _offsets[k];
+                for (int l = 0; l < active; l++) {
+                    x[l] = mod[f[x[l] + s[l]] - s[l]];
+                }
+            }
+            int[] refl = _reflector;
+            for (int l = 0; l < active; l++) {
+                x[l] = refl[x[l]];
+            }
+            for (int k = 1; k < _numRotors; k++) {
+                int[] b = _backward[k], s = _offsets[k];
+                for (int l = 0; l < active; l++) {
+                    x[l] = mod[b[x[l] + s[l]] - s[l]];
+                }
+            }
+            for (int l = 0; l < active; l++) {
+                _msgs[l][t] = plug[x[l]];
+            }
+        }
+    }
+
+    /** Advance the moving rotors of the first ACTIVE lanes as
+     *  Machine.whichRotates does.  Going from left to right, each rotor
+     *  is advanced by the notch bit of its right neighbour or, failing
+     *  that, its own (which is always 0 for the leftmost moving rotor),
+     *  before either has moved. */
+    private void step(int active) {
+        if (_first == _numRotors) {
+            return;
+        }
+        int[] mod = _mod;
+        for (int k = _first; k < _numRotors - 1; k++) {
+            int[] s = _offsets[k], r = _offsets[k + 1];
+            int[] own = _kicks[k], right = _kicks[k + 1];
+            for (int l = 0; l < active; l++) {
+                s[l] = mod[s[l] + (right[r[l]] | own[s[l]])];
+            }
+        }
+        int[] s = _offsets[_numRotors - 1];
+        for (int l = 0; l < active; l++) {
+            s[l] = mod[s[l] + 1];
+        }
+    }
+
+    /** Number of messages converted together. */
+    static final int LANES = 64;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Slot of the leftmost moving rotor. */
+    private final int _first;
+
+    /** The plugboard. */
+    private final int[] _plug;
+
+    /** The reflector. */
+    private final int[] _reflector;
+
+    /** _mod[i] is i modulo the alphabet size, for 0 <= i < 2 * size. */
+    private final int[] _mod;
+
+    /** The ring setting of the rotor in each slot. */
+    private final int[] _rings;
+
+    /** For each slot but the reflector's, the forward wiring of index i
+     *  modulo size, plus size, at index i. */
+    private final int[][] _forward;
+
+    /** For each slot, the inverse wiring, laid out as _forward. */
+    private final int[][] _backward;
+
+    /** For each slot but the reflector's, 1 at each offset where its
+     *  rotor is at a notch, and 0 elsewhere.  All 0 for the leftmost
+     *  moving rotor, which cannot double step, and for fixed rotors. */
+    private final int[][] _kicks;
+
+    /** The current offset of the rotor in each slot, for each lane. */
+    private final int[][] _offsets;
+
+    /** The character in each lane as it passes through the machine. */
+    private final int[] _lanes;
+
+    /** The message in each lane. */
+    private final int[][] _msgs;
+}
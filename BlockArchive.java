@@ -0,0 +1,259 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A file of data encrypted with a byte-alphabet machine (see
+ *  ByteCipher), laid out so that any range of it can be read or
+ *  rewritten without passing through what comes before.  The data are
+ *  stored as ciphertext blocks of a fixed size, and an index records,
+ *  for each block, its offset in the file and the rotor settings at its
+ *  first byte.  Reading a range restores the settings of the block that
+ *  holds its start, seeks to the start within the block, and decrypts
+ *  just the blocks the range touches, fetched with positional reads.
+ *  Writing over a range likewise encrypts just the new bytes, at the
+ *  settings they fall at, so only the blocks touched are rewritten.
+ *
+ *  The file is a header of HEADER bytes (magic number, version, block
+ *  size, number of rotors, data length and the offset of the index),
+ *  then the blocks, then the index, each entry of which is a long
+ *  offset and an int setting for each rotor slot.  The machine itself
+ *  (rotors, ring settings, plugboard and initial settings) is the key,
+ *  and is not stored.  Reads may be made concurrently; writes are
+ *  serialized.  The length of the data is fixed when the file is made.
+ *  @author Miranda Cheung
+ */
+class BlockArchive implements Closeable {
+
+    /** Usual number of bytes in a block. */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /** Write the bytes of DATA to FILE, encrypted with MACHINE from its
+     *  current settings, in blocks of BLOCKSIZE bytes.  MACHINE is not
+     *  changed. */
+    static void create(Path file, Machine machine, InputStream data,
+                       int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw error("block size must be positive");
+        }
+        Machine at = new Machine(machine);
+        ByteCipher cipher = new ByteCipher(at);
+        int slots = machine.numRotors();
+        try (FileChannel out = FileChannel.open(
+                 file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer index = ByteBuffer.allocate(entrySize(slots));
+            ByteBuffer entries = ByteBuffer.allocate(0);
+            byte[] block = new byte[blockSize];
+            long length = 0;
+            while (true) {
+                int n = data.readNBytes(block, 0, blockSize);
+                if (n == 0) {
+                    break;
+                }
+                index.clear().putLong(HEADER + length);
+                for (int posn : at.settings()) {
+                    index.putInt(posn);
+                }
+                entries = append(entries, index.flip());
+                cipher.convert(block, 0, n);
+                at.seek(n);
+                writeFully(out, ByteBuffer.wrap(block, 0, n),
+                           HEADER + length);
+                length += n;
+            }
+            writeFully(out, entries.flip(), HEADER + length);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(blockSize)
+                .putInt(slots).putLong(length).putLong(HEADER + length);
+            writeFully(out, header.flip(), 0);
+            out.force(true);
+        }
+    }
+
+    /** Return the archive in FILE, whose key is MACHINE at its current
+     *  settings.  MACHINE's later changes do not affect the archive. */
+    static BlockArchive open(Path file, Machine machine) throws IOException {
+        FileChannel channel = FileChannel.open(
+            file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new BlockArchive(file, channel, machine);
+        } catch (EnigmaException | IOException excp) {
+            channel.close();
+            throw excp;
+        }
+    }
+
+    /** The archive in FILE, open on CHANNEL, with key MACHINE. */
+    private BlockArchive(Path file, FileChannel channel, Machine machine)
+        throws IOException {
+        _channel = channel;
+        _machine = new Machine(machine);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw error("%s is not an archive", file);
+        } else if (header.getInt(4) != VERSION) {
+            throw error("%s has unsupported version %d", file,
+                        header.getInt(4));
+        }
+        _blockSize = header.getInt(8);
+        int slots = header.getInt(12);
+        _length = header.getLong(16);
+        long indexAt = header.getLong(24);
+        if (slots != machine.numRotors()) {
+            throw error("%s needs a machine with %d rotors", file, slots);
+        } else if (_blockSize <= 0 || _length < 0) {
+            throw error("%s is damaged", file);
+        }
+        int blocks = (int) ((_length + _blockSize - 1) / _blockSize);
+        ByteBuffer index = ByteBuffer.allocate(blocks * entrySize(slots));
+        if (indexAt + index.capacity() != channel.size()) {
+            throw error("%s is damaged", file);
+        }
+        readFully(index, indexAt);
+        index.flip();
+        _offsets = new long[blocks];
+        _posns = new int[blocks][slots];
+        for (int b = 0; b < blocks; b++) {
+            _offsets[b] = index.getLong();
+            for (int k = 0; k < slots; k++) {
+                _posns[b][k] = index.getInt();
+            }
+        }
+        _rings = new int[slots];
+        for (int k = 1; k < slots; k++) {
+            _rings[k] = machine.ring(k);
+        }
+    }
+
+    /** Return the number of bytes of data I hold. */
+    long size() {
+        return _length;
+    }
+
+    /** Return the number of bytes in each of my blocks. */
+    int blockSize() {
+        return _blockSize;
+    }
+
+    /** Decrypt up to LEN bytes of my data, starting at byte POS, into
+     *  BUF starting at OFF.  Return the number of bytes read, or -1 if
+     *  POS is at or past the end of my data. */
+    int read(long pos, byte[] buf, int off, int len) throws IOException {
+        if (pos < 0) {
+            throw error("negative position");
+        } else if (pos >= _length) {
+            return -1;
+        }
+        len = (int) Math.min(len, _length - pos);
+        readFully(ByteBuffer.wrap(buf, off, len), fileOffset(pos));
+        cipherAt(pos).convert(buf, off, len);
+        return len;
+    }
+
+    /** Replace the LEN bytes of my data starting at POS with those of BUF
+     *  starting at OFF, which must not extend past my end. */
+    synchronized void write(long pos, byte[] buf, int off, int len)
+        throws IOException {
+        if (pos < 0 || pos + len > _length) {
+            throw error("write outside the archive");
+        }
+        byte[] encrypted = new byte[len];
+        cipherAt(pos).convert(buf, off, len, encrypted, 0);
+        writeFully(_channel, ByteBuffer.wrap(encrypted), fileOffset(pos));
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return a cipher set as my key is after POS bytes. */
+    private ByteCipher cipherAt(long pos) {
+        int b = (int) (pos / _blockSize);
+        Machine machine = new Machine(_machine);
+        machine.setSettings(_posns[b], _rings);
+        machine.seek(pos - (long) b * _blockSize);
+        return new ByteCipher(machine);
+    }
+
+    /** Return the offset in my file of byte POS of my data. */
+    private long fileOffset(long pos) {
+        int b = (int) (pos / _blockSize);
+        return _offsets[b] + pos - (long) b * _blockSize;
+    }
+
+    /** Fill BUF from my file, starting at POS. */
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = _channel.read(buf, pos);
+            if (n < 0) {
+                throw error("archive is truncated");
+            }
+            pos += n;
+        }
+    }
+
+    /** Write the rest of BUF to CHANNEL starting at POS. */
+    private static void writeFully(FileChannel channel, ByteBuffer buf,
+                                   long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    /** Return BUF, in write mode, with the rest of MORE added, in a
+     *  larger buffer if need be. */
+    private static ByteBuffer append(ByteBuffer buf, ByteBuffer more) {
+        if (buf.remaining() < more.remaining()) {
+            int size = Math.max(2 * buf.capacity(),
+                                buf.position() + more.remaining());
+            buf = ByteBuffer.allocate(size).put(buf.flip());
+        }
+        return buf.put(more);
+    }
+
+    /** Return the size of an index entry for a machine with SLOTS
+     *  rotors. */
+    private static int entrySize(int slots) {
+        return Long.BYTES + slots * Integer.BYTES;
+    }
+
+    /** Identifies an archive. */
+    private static final int MAGIC = 0x454e4341;
+
+    /** Version of the archive format. */
+    private static final int VERSION = 1;
+
+    /** Number of bytes in the header. */
+    private static final int HEADER = 32;
+
+    /** My file. */
+    private final FileChannel _channel;
+
+    /** My key, at the start of the data. */
+    private final Machine _machine;
+
+    /** Number of bytes of data. */
+    private final long _length;
+
+    /** Number of bytes in each block. */
+    private final int _blockSize;
+
+    /** The offset in my file of each block. */
+    private final long[] _offsets;
+
+    /** The rotor settings at the start of each block. */
+    private final int[][] _posns;
+
+    /** Ring settings of my key. */
+    private final int[] _rings;
+}
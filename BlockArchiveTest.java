@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the BlockArchive class.
+ *  @author Miranda Cheung
+ */
+public class BlockArchiveTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return an archive file holding DATA encrypted with KEY in blocks
+     *  of 1000 bytes. */
+    private static File archive(byte[] data, Machine key)
+        throws IOException {
+        File file = File.createTempFile("enigma", ".arc");
+        file.deleteOnExit();
+        BlockArchive.create(file.toPath(), key,
+                            new ByteArrayInputStream(data), 1000);
+        return file;
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        byte[] data = new byte[10500];
+        new Random(4).nextBytes(data);
+        Machine key = ByteCipherTest.byteMachine(5);
+        File file = archive(data, key);
+        byte[] stored = Files.readAllBytes(file.toPath());
+        byte[] whole = data.clone();
+        new ByteCipher(key).convert(whole, 0, whole.length);
+        assertArrayEquals(whole, Arrays.copyOfRange(stored, 32, 10532));
+
+        try (BlockArchive arc = BlockArchive.open(file.toPath(), key)) {
+            assertEquals(10500, arc.size());
+            assertEquals(1000, arc.blockSize());
+            int[][] ranges = { {0, 10}, {999, 2}, {4321, 3000}, {10000, 500},
+                               {0, 10500}, {10499, 1} };
+            for (int[] range : ranges) {
+                byte[] buf = new byte[range[1]];
+                assertEquals(range[1], arc.read(range[0], buf, 0, range[1]));
+                assertArrayEquals(Arrays.copyOfRange(data, range[0],
+                                                     range[0] + range[1]),
+                                  buf);
+            }
+            byte[] buf = new byte[100];
+            assertEquals(50, arc.read(10450, buf, 0, 100));
+            assertEquals(-1, arc.read(10500, buf, 0, 100));
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        byte[] data = new byte[5000];
+        new Random(6).nextBytes(data);
+        Machine key = ByteCipherTest.byteMachine(7);
+        File file = archive(data, key);
+        byte[] before = Files.readAllBytes(file.toPath());
+        byte[] patch = new byte[1200];
+        new Random(8).nextBytes(patch);
+        try (BlockArchive arc = BlockArchive.open(file.toPath(), key)) {
+            arc.write(1900, patch, 0, patch.length);
+            System.arraycopy(patch, 0, data, 1900, patch.length);
+            byte[] all = new byte[5000];
+            assertEquals(5000, arc.read(0, all, 0, 5000));
+            assertArrayEquals(data, all);
+        }
+        byte[] after = Files.readAllBytes(file.toPath());
+        for (int i = 0; i < after.length; i++) {
+            if (i < 32 + 1900 || i >= 32 + 3100) {
+                assertEquals(before[i], after[i]);
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotArchive() throws IOException {
+        File file = File.createTempFile("enigma", ".arc");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[64]);
+        BlockArchive.open(file.toPath(), ByteCipherTest.byteMachine(1));
+    }
+}
@@ -0,0 +1,436 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A Turing Bombe: finds the rotor orders, settings and plugboard
+ *  pairs under which a known crib could have produced a piece of
+ *  ciphertext.  The crib and ciphertext, aligned letter for letter,
+ *  form a menu: a graph on the letters with an edge from P to C,
+ *  labelled I, whenever the crib has P and the ciphertext C at position
+ *  I.  For each rotor order and each start position, the Bombe
+ *  supposes in turn that the most connected letter of the menu, the
+ *  test register, is steckered to each letter, and follows the
+ *  consequences through the edges (the scrambler at position I sends
+ *  the stecker of one end of an edge to the stecker of the other) and
+ *  the diagonal board (if A is steckered to X, X is steckered to A).  A
+ *  supposition is refuted as soon as it would give some letter two
+ *  steckers, which for a wrong one is usually within a few steps; one
+ *  whose consequences are all consistent is a stop.
+ *
+ *  Like the original, the Bombe assumes that only the rightmost rotor
+ *  moves while the crib is enciphered, and finds the rotors' offsets
+ *  (settings less ring settings), which it reports as settings with all
+ *  rings at the first letter.  Each step of the closure is a few table
+ *  lookups: the rightmost rotor's wiring on either side of a table for
+ *  the rest of the scrambler, which changes only when the rotors to its
+ *  left do.  The search is divided among the threads of a work-stealing
+ *  pool by rotor order and by settings of the rotors left of the
+ *  rightmost.
+ *  @author Miranda Cheung
+ */
+class Bombe {
+
+    /** A Bombe for MACHINE's alphabet, numbers of rotors and pawls, and
+     *  rotors, looking for the settings under which CRIB enciphers to
+     *  CIPHER, which must have the same length, shorter than the
+     *  alphabet (over as many letters as the alphabet has, the rightmost
+     *  rotor passes every notch it has, so the rotor to its left would
+     *  certainly move). */
+    Bombe(Machine machine, String crib, String cipher) {
+        Alphabet alpha = machine.alphabet();
+        _size = alpha.size();
+        if (crib.length() != cipher.length() || crib.isEmpty()) {
+            throw error("crib and ciphertext must have the same length");
+        } else if (crib.length() >= _size) {
+            throw error("crib must be shorter than the alphabet, %d "
+                        + "letters", _size);
+        }
+        _machine = machine;
+        int len = crib.length();
+        int[] degree = new int[_size];
+        int[] from = new int[len], to = new int[len];
+        for (int i = 0; i < len; i++) {
+            from[i] = alpha.toInt(crib.charAt(i));
+            to[i] = alpha.toInt(cipher.charAt(i));
+            if (from[i] == to[i]) {
+                throw error("crib cannot be at this position: %c would "
+                            + "encipher to itself", crib.charAt(i));
+            }
+            degree[from[i]] += 1;
+            degree[to[i]] += 1;
+        }
+        _start = new int[_size + 1];
+        for (int a = 0; a < _size; a++) {
+            _start[a + 1] = _start[a] + degree[a];
+        }
+        _other = new int[2 * len];
+        _position = new int[2 * len];
+        int[] next = _start.clone();
+        int test = 0;
+        for (int i = 0; i < len; i++) {
+            _other[next[from[i]]] = to[i];
+            _position[next[from[i]]++] = i + 1;
+            _other[next[to[i]]] = from[i];
+            _position[next[to[i]]++] = i + 1;
+        }
+        for (int a = 0; a < _size; a++) {
+            if (degree[a] > degree[test]) {
+                test = a;
+            }
+        }
+        _test = test;
+    }
+
+    /** Return every order of rotors that MACHINE's configuration
+     *  allows: a reflector, then distinct non-moving rotors, then
+     *  distinct moving rotors in the slots with pawls. */
+    static List<String[]> orders(Machine machine) {
+        RotorRegistry rotors = machine.rotors();
+        List<String[]> result = new ArrayList<>();
+        addOrders(rotors, rotors.names(), machine.numRotors(),
+                  machine.numPawls(), new String[machine.numRotors()], 0,
+                  result);
+        return result;
+    }
+
+    /** Add to RESULT each order that completes ORDER from slot K,
+     *  choosing among the rotors NAMES in ROTORS, for a machine with
+     *  NUMROTORS slots and PAWLS pawls. */
+    private static void addOrders(RotorRegistry rotors, List<String> names,
+                                  int numRotors, int pawls, String[] order,
+                                  int k, List<String[]> result) {
+        if (k == numRotors) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : names) {
+            Rotor rotor = rotors.get(name);
+            boolean fits = k == 0 ? rotor.reflecting()
+                : k >= numRotors - pawls ? rotor.rotates()
+                : !rotor.rotates() && !rotor.reflecting();
+            for (int j = 1; fits && j < k; j++) {
+                fits = !order[j].equals(name);
+            }
+            if (fits) {
+                order[k] = name;
+                addOrders(rotors, names, numRotors, pawls, order, k + 1,
+                          result);
+            }
+        }
+    }
+
+    /** Return the stops for each of the rotor orders ORDERS, using
+     *  THREADS threads, in the order of ORDERS and then of settings. */
+    List<Stop> run(List<String[]> orders, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new Search(orders, 0, orders.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** A possible key: a rotor order, settings and plugboard pairs. */
+    static class Stop {
+
+        /** A stop with rotors ROTORS, settings SETTINGS and plugboard
+         *  PLUGBOARD, as they would appear on a settings line. */
+        Stop(String[] rotors, String settings, String plugboard) {
+            _rotors = rotors;
+            _settings = settings;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, one letter for each slot after the
+         *  reflector. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return the plugboard pairs found, such as "(AB) (CD)". */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return ("* " + String.join(" ", _rotors) + " " + _settings
+                    + " " + _plugboard).trim();
+        }
+
+        /** My rotors. */
+        private final String[] _rotors;
+
+        /** My settings and plugboard pairs. */
+        private final String _settings, _plugboard;
+    }
+
+    /** Searches a range of rotor orders, or, for a single order, a
+     *  range of settings of the rotors left of the rightmost. */
+    private class Search extends RecursiveTask<List<Stop>> {
+
+        /** Search ORDERS[FIRST .. LAST - 1]. */
+        Search(List<String[]> orders, int first, int last) {
+            _orders = orders;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                Search left = new Search(_orders, _first, mid);
+                left.fork();
+                List<Stop> result =
+                    new Search(_orders, mid, _last).compute();
+                result.addAll(0, left.join());
+                return result;
+            }
+            List<Stop> result = new ArrayList<>();
+            if (_first < _last) {
+                Order order = new Order(_orders.get(_first));
+                List<Sweep> sweeps = new ArrayList<>();
+                for (long s = 0; s < order._lefts; s += SWEEP) {
+                    sweeps.add(new Sweep(order, s,
+                                         Math.min(order._lefts, s + SWEEP)));
+                }
+                invokeAll(sweeps);
+                for (Sweep sweep : sweeps) {
+                    result.addAll(sweep.join());
+                }
+            }
+            return result;
+        }
+
+        /** The orders searched. */
+        private final List<String[]> _orders;
+
+        /** Range of orders searched. */
+        private final int _first, _last;
+    }
+
+    /** The tables for one order of rotors. */
+    private class Order {
+
+        /** Tables for the rotors named NAMES. */
+        Order(String[] names) {
+            _names = names;
+            int slots = names.length;
+            _rotors = new Rotor[slots];
+            for (int k = 0; k < slots; k++) {
+                _rotors[k] = _machine.rotors().get(names[k]);
+            }
+            Permutation right = _rotors[slots - 1].permutation();
+            _fwd = new int[2 * _size];
+            _bwd = new int[2 * _size];
+            _mod = new int[3 * _size];
+            for (int c = 0; c < 2 * _size; c++) {
+                _fwd[c] = right.permute(c % _size);
+                _bwd[c] = right.invert(c % _size);
+            }
+            for (int c = 0; c < _mod.length; c++) {
+                _mod[c] = c % _size;
+            }
+            long lefts = 1;
+            for (int k = 1; k < slots - 1; k++) {
+                lefts *= _size;
+            }
+            _lefts = lefts;
+        }
+
+        /** The names of my rotors. */
+        private final String[] _names;
+
+        /** My rotors. */
+        private final Rotor[] _rotors;
+
+        /** The rightmost rotor's wiring and its inverse, twice over. */
+        private final int[] _fwd, _bwd;
+
+        /** _mod[c] is c modulo the alphabet size. */
+        private final int[] _mod;
+
+        /** Number of settings of the rotors left of the rightmost. */
+        private final long _lefts;
+    }
+
+    /** Tests every setting of the rightmost rotor, for a range of
+     *  settings of the rotors to its left, under one rotor order. */
+    private class Sweep extends RecursiveTask<List<Stop>> {
+
+        /** Sweep ORDER for the settings of the rotors left of the
+         *  rightmost numbered FIRST .. LAST - 1. */
+        Sweep(Order order, long first, long last) {
+            _order = order;
+            _first = first;
+            _last = last;
+            _stecker = new int[_size];
+            _queue = new int[_size];
+            Arrays.fill(_stecker, -1);
+            _inner = new int[_size];
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            List<Stop> result = new ArrayList<>();
+            int slots = _order._names.length;
+            int[] posns = new int[slots];
+            for (long s = _first; s < _last; s++) {
+                long rest = s;
+                for (int k = slots - 2; k >= 1; k--) {
+                    posns[k] = (int) (rest % _size);
+                    rest /= _size;
+                }
+                fillInner(posns);
+                for (int r = 0; r < _size; r++) {
+                    posns[slots - 1] = r;
+                    test(r, posns, result);
+                }
+            }
+            return result;
+        }
+
+        /** Set _inner to the scrambler left of the rightmost rotor, with
+         *  the rotors at POSNS. */
+        private void fillInner(int[] posns) {
+            Rotor[] rotors = _order._rotors;
+            int last = rotors.length - 2;
+            for (int c = 0; c < _size; c++) {
+                int x = c;
+                for (int k = last; k >= 1; k--) {
+                    x = rotors[k].convertForward(x, posns[k]);
+                }
+                x = rotors[0].convertForward(x, 0);
+                for (int k = 1; k <= last; k++) {
+                    x = rotors[k].convertBackward(x, posns[k]);
+                }
+                _inner[c] = x;
+            }
+        }
+
+        /** Add to RESULT the stops with the rightmost rotor at R and the
+         *  others at POSNS. */
+        private void test(int r, int[] posns, List<Stop> result) {
+            for (int x = 0; x < _size; x++) {
+                if (close(r, x)) {
+                    result.add(stop(posns));
+                }
+            }
+        }
+
+        /** Suppose the test register is steckered to X, with the
+         *  rightmost rotor at R before the first letter, and follow the
+         *  consequences into _stecker.  Return false as soon as some
+         *  letter would have two steckers, and otherwise true. */
+        private boolean close(int r, int x) {
+            for (int t = 0; t < _touched; t++) {
+                _stecker[_queue[t]] = -1;
+            }
+            _touched = 0;
+            int[] fwd = _order._fwd, bwd = _order._bwd, mod = _order._mod;
+            int n = _size;
+            if (!plug(_test, x)) {
+                return false;
+            }
+            for (int head = 0; head < _touched; head++) {
+                int a = _queue[head], v = _stecker[a];
+                for (int e = _start[a]; e < _start[a + 1]; e++) {
+                    int k = mod[r + _position[e]];
+                    int w = mod[fwd[v + k] + n - k];
+                    w = _inner[w];
+                    w = mod[bwd[w + k] + n - k];
+                    if (!plug(_other[e], w)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that A is steckered to V, and so, by the diagonal
+         *  board, V to A.  Return false if either already has another
+         *  stecker. */
+        private boolean plug(int a, int v) {
+            if (_stecker[a] < 0 && _stecker[v] < 0) {
+                _stecker[a] = v;
+                _queue[_touched++] = a;
+                if (v != a) {
+                    _stecker[v] = a;
+                    _queue[_touched++] = v;
+                }
+                return true;
+            }
+            return _stecker[a] == v;
+        }
+
+        /** Return the stop with the rotors at POSNS and the steckers in
+         *  _stecker. */
+        private Stop stop(int[] posns) {
+            Alphabet alpha = _machine.alphabet();
+            StringBuilder settings = new StringBuilder();
+            for (int k = 1; k < posns.length; k++) {
+                settings.appendCodePoint(alpha.toCodePoint(posns[k]));
+            }
+            StringBuilder plugs = new StringBuilder();
+            for (int a = 0; a < _size; a++) {
+                int b = _stecker[a];
+                if (a < b) {
+                    plugs.append(plugs.length() == 0 ? "(" : " (")
+                        .appendCodePoint(alpha.toCodePoint(a))
+                        .appendCodePoint(alpha.toCodePoint(b)).append(')');
+                }
+            }
+            return new Stop(_order._names, settings.toString(),
+                            plugs.toString());
+        }
+
+        /** The order swept. */
+        private final Order _order;
+
+        /** Range of settings of the left rotors swept. */
+        private final long _first, _last;
+
+        /** The stecker of each letter found so far, or -1. */
+        private final int[] _stecker;
+
+        /** The letters given steckers so far, in order; the consequences
+         *  of those from _queue[head] on are yet to be followed. */
+        private final int[] _queue;
+
+        /** Number of letters in _queue. */
+        private int _touched;
+
+        /** The scrambler left of the rightmost rotor. */
+        private final int[] _inner;
+    }
+
+    /** Number of settings of the left rotors in each Sweep. */
+    private static final int SWEEP = 64;
+
+    /** The machine whose alphabet and rotors are used. */
+    private final Machine _machine;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The menu's edges from letter A are _other[_start[A] ..
+     *  _start[A + 1] - 1], the letters at their other ends.  For an edge
+     *  at crib position I, _position[...] is I + 1: the turns of the
+     *  rightmost rotor at that letter, less than the alphabet size. */
+    private final int[] _start, _other, _position;
+
+    /** The test register. */
+    private final int _test;
+}
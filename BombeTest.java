@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Miranda Cheung
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A crib, short enough that rotor I, starting at E, does not
+     *  reach its notch while enciphering it. */
+    private static final String CRIB = "WETTERVORHER";
+
+    @Test
+    public void testFindsKey() {
+        Machine machine = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        String cipher = machine.convert(CRIB);
+        Bombe bombe = new Bombe(machine, CRIB, cipher);
+        List<String[]> orders = Collections.singletonList(ROTORS);
+        boolean found = false;
+        for (Bombe.Stop stop : bombe.run(orders, 2)) {
+            assertArrayEquals(ROTORS, stop.rotors());
+            if (stop.settings().equals("AXLE")) {
+                found = true;
+                for (String pair : stop.plugboard().split(" ")) {
+                    assertTrue(pair, pair.isEmpty() || pair.equals("(FY)")
+                               || pair.equals("(HZ)"));
+                }
+            }
+        }
+        assertTrue("missed the key", found);
+    }
+
+    @Test
+    public void testFewStops() {
+        Machine machine = navalMachine(ROTORS, "AQMC", "(AR) (KT)");
+        String cipher = machine.convert(CRIB);
+        Bombe bombe = new Bombe(machine, CRIB, cipher);
+        List<Bombe.Stop> stops =
+            bombe.run(Collections.singletonList(ROTORS), 1);
+        assertFalse(stops.isEmpty());
+        assertTrue(stops.size() < 1000);
+    }
+
+    @Test
+    public void testOrders() {
+        Machine machine = navalMachine(ROTORS, "AAAA", "");
+        List<String[]> orders = Bombe.orders(machine);
+        /* 2 reflectors, 2 thin rotors, 8 * 7 * 6 moving rotor orders. */
+        assertEquals(2 * 2 * 8 * 7 * 6, orders.size());
+        for (String[] order : orders) {
+            assertEquals(5, order.length);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipherment() {
+        Machine machine = navalMachine(ROTORS, "AAAA", "");
+        new Bombe(machine, "ABC", "XBZ");
+    }
+
+    @Test
+    public void testLongestCrib() {
+        String crib = "THEQUICKBROWNFOXJUMPSOVER";
+        Machine machine = navalMachine(ROTORS, "AXLR", "(YF) (ZH)");
+        /* Rotor I, starting at R, is at its notch Q for the last letter
+         * but leaves it only after the crib. */
+        Bombe bombe = new Bombe(machine, crib, machine.convert(crib));
+        boolean found = false;
+        for (Bombe.Stop stop
+                 : bombe.run(Collections.singletonList(ROTORS), 1)) {
+            found |= stop.settings().equals("AXLR");
+        }
+        assertTrue("missed the key", found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAlphabetLengthCrib() {
+        String crib = "THEQUICKBROWNFOXJUMPSOVERZ";
+        Machine machine = navalMachine(ROTORS, "AXLR", "(YF) (ZH)");
+        new Bombe(machine, crib, machine.convert(crib));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLongCrib() {
+        String crib = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOGANDRUNSAWAY"
+            + "ZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZ";
+        Machine machine = navalMachine(ROTORS, "AXLE", "");
+        new Bombe(machine, crib, machine.convert(crib));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLengths() {
+        Machine machine = navalMachine(ROTORS, "AAAA", "");
+        new Bombe(machine, "ABC", "XY");
+    }
+}
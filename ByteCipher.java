@@ -0,0 +1,105 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts binary data with a machine whose alphabet is
+ *  Alphabet.bytes(), so that every byte value is a character and the
+ *  index of each byte is its (unsigned) value.  Bytes go straight to
+ *  and from alphabet indices, never through chars or Strings, and are
+ *  converted a block at a time by a CompiledMachine.  A ByteCipher has
+ *  its own rotor settings, starting from those of the machine it was
+ *  made from; converting does not change the machine.
+ *  @author Miranda Cheung
+ */
+class ByteCipher {
+
+    /** A cipher converting as MACHINE, whose rotors and plugboard must be
+     *  set, would from its current settings. */
+    ByteCipher(Machine machine) {
+        if (!machine.alphabet().isBytes()) {
+            throw error("byte conversion needs the byte alphabet");
+        }
+        _engine = CompiledMachine.compile(machine);
+    }
+
+    /** Convert the LEN bytes starting at BUF[OFF] in place. */
+    void convert(byte[] buf, int off, int len) {
+        convert(buf, off, len, buf, off);
+    }
+
+    /** Convert the LEN bytes starting at IN[OFF] into OUT starting at
+     *  OUTOFF.  IN and OUT may be the same array. */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        int[] block = _block;
+        while (len > 0) {
+            int n = Math.min(len, BLOCK);
+            for (int i = 0; i < n; i++) {
+                block[i] = in[off + i] & BYTE_MASK;
+            }
+            _engine.convert(block, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[outOff + i] = (byte) block[i];
+            }
+            off += n;
+            outOff += n;
+            len -= n;
+        }
+    }
+
+    /** Convert the bytes of BUF between its position and limit in
+     *  place, and advance its position to its limit. */
+    void convert(ByteBuffer buf) {
+        convert(buf, buf);
+    }
+
+    /** Convert the remaining bytes of SRC into DEST, which must have as
+     *  many remaining, advancing both positions.  SRC and DEST may be the
+     *  same buffer. */
+    void convert(ByteBuffer src, ByteBuffer dest) {
+        int len = src.remaining();
+        if (dest.remaining() < len) {
+            throw error("destination too small");
+        }
+        int from = src.position(), to = dest.position();
+        if (src.hasArray() && dest.hasArray()) {
+            convert(src.array(), src.arrayOffset() + from, len,
+                    dest.array(), dest.arrayOffset() + to);
+        } else {
+            convertBlocks(src, from, dest, to, len);
+        }
+        src.position(from + len);
+        dest.position(to + len);
+    }
+
+    /** Convert the LEN bytes of SRC starting at FROM into DEST starting
+     *  at TO, a block at a time. */
+    private void convertBlocks(ByteBuffer src, int from, ByteBuffer dest,
+                              int to, int len) {
+        byte[] bytes = new byte[Math.min(len, BLOCK)];
+        for (int i = 0; i < len; i += bytes.length) {
+            int n = Math.min(bytes.length, len - i);
+            src.get(from + i, bytes, 0, n);
+            convert(bytes, 0, n);
+            dest.put(to + i, bytes, 0, n);
+        }
+    }
+
+    /** Return a single byte, B, converted. */
+    byte convert(byte b) {
+        return (byte) _engine.convert(b & BYTE_MASK);
+    }
+
+    /** Number of bytes converted at a time. */
+    private static final int BLOCK = 1 << 12;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The conversion engine. */
+    private final CompiledMachine _engine;
+
+    /** Alphabet indices being converted. */
+    private final int[] _block = new int[BLOCK];
+}
@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ByteCipher class and the
+ *  streams that use it.
+ *  @author Miranda Cheung
+ */
+public class ByteCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a random wiring of the byte alphabet, using RANDOM, that is
+     *  a derangement made of swaps if REFLECT. */
+    private static Permutation wiring(Random random, boolean reflect) {
+        int[] table = new int[256];
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int k = 0; k < 256; k++) {
+            order.add(k);
+        }
+        Collections.shuffle(order, random);
+        for (int k = 0; k < 256; k++) {
+            if (!reflect) {
+                table[k] = order.get(k);
+            } else if (k % 2 == 0) {
+                table[order.get(k)] = order.get(k + 1);
+                table[order.get(k + 1)] = order.get(k);
+            }
+        }
+        return new Permutation(Alphabet.bytes(), table);
+    }
+
+    /** Return a 4-slot, 3-pawl machine of random byte rotors made with
+     *  SEED, set to random settings. */
+    static Machine byteMachine(long seed) {
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", wiring(random, true)));
+        for (int k = 1; k <= 3; k++) {
+            boolean[] notches = new boolean[256];
+            notches[random.nextInt(256)] = true;
+            notches[random.nextInt(256)] = true;
+            rotors.add(new MovingRotor("M" + k, wiring(random, false),
+                                       notches));
+        }
+        Machine m = new Machine(Alphabet.bytes(), 4, 3, rotors);
+        m.insertRotors(new String[] { "R", "M1", "M2", "M3" });
+        int[] posns = new int[4], rings = new int[4];
+        for (int k = 1; k < 4; k++) {
+            posns[k] = random.nextInt(256);
+            rings[k] = random.nextInt(256);
+        }
+        m.setSettings(posns, rings);
+        m.setPlugboard(wiring(random, true));
+        return m;
+    }
+
+    /** Return random bytes of length LENGTH. */
+    private static byte[] data(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void testBytesAlphabet() {
+        Alphabet bytes = Alphabet.bytes();
+        assertTrue(bytes.isBytes());
+        assertFalse(new Alphabet().isBytes());
+        assertEquals(256, bytes.size());
+        assertEquals('*', bytes.toChar('*'));
+        assertEquals(255, bytes.indexOf(255));
+    }
+
+    @Test
+    public void testConvert() {
+        byte[] data = data(20000);
+        Machine m = byteMachine(1);
+        ByteCipher cipher = new ByteCipher(m);
+        byte[] out = data.clone();
+        cipher.convert(out, 0, 10000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(10000);
+        direct.put(data, 10000, 10000).flip();
+        cipher.convert(direct);
+        assertFalse(direct.hasRemaining());
+        direct.flip().get(out, 10000, 10000);
+        ByteBuffer heap = ByteBuffer.wrap(out.clone(), 5000, 100);
+        cipher.convert(heap);
+        assertEquals(5100, heap.position());
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(m.convert(data[i] & 0xff), out[i] & 0xff);
+        }
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        byte[] data = data(50000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new EnigmaOutputStream(
+                 bytes, new ByteCipher(byteMachine(2)))) {
+            out.write(data, 0, 1);
+            out.write(data[1]);
+            out.write(data, 2, data.length - 2);
+        }
+        byte[] encrypted = bytes.toByteArray();
+        assertFalse(Arrays.equals(data, encrypted));
+        byte[] decrypted = new byte[data.length];
+        try (InputStream in = new EnigmaInputStream(
+                 new ByteArrayInputStream(encrypted),
+                 new ByteCipher(byteMachine(2)))) {
+            decrypted[0] = (byte) in.read();
+            assertEquals(100, in.skip(100));
+            int n = 101;
+            while (n < data.length) {
+                n += in.read(decrypted, n, data.length - n);
+            }
+            assertEquals(-1, in.read());
+        }
+        System.arraycopy(data, 1, decrypted, 1, 100);
+        assertArrayEquals(data, decrypted);
+    }
+}
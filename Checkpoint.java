@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a conversion of an input file into an output file at
+ *  the end of some message line, from which the conversion can be
+ *  resumed: the number of chars of input consumed, the number of bytes
+ *  of output written, the settings line in force and the settings and
+ *  ring settings of the rotors.  A checkpoint is kept in a small text
+ *  file, which is always replaced atomically, so that it holds either
+ *  the previous checkpoint or the new one, whenever the process dies.
+ *  @author Miranda Cheung
+ */
+class Checkpoint {
+
+    /** A checkpoint after INPUTCHARS chars of input and OUTPUTBYTES
+     *  bytes of output, with settings line SETTING in force and the
+     *  rotors of MACHINE as they are now. */
+    Checkpoint(long inputChars, long outputBytes, String setting,
+               Machine machine) {
+        _inputChars = inputChars;
+        _outputBytes = outputBytes;
+        _setting = setting;
+        _posns = machine.settings();
+        _rings = new int[_posns.length];
+        for (int k = 1; k < _rings.length; k++) {
+            _rings[k] = machine.ring(k);
+        }
+    }
+
+    /** A checkpoint with the given INPUTCHARS, OUTPUTBYTES, SETTING,
+     *  POSNS and RINGS. */
+    private Checkpoint(long inputChars, long outputBytes, String setting,
+                       int[] posns, int[] rings) {
+        _inputChars = inputChars;
+        _outputBytes = outputBytes;
+        _setting = setting;
+        _posns = posns;
+        _rings = rings;
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(Path file) {
+        try {
+            Properties props = new Properties();
+            props.load(new StringReader(
+                new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+            return new Checkpoint(
+                Long.parseLong(props.getProperty("input.chars")),
+                Long.parseLong(props.getProperty("output.bytes")),
+                props.getProperty("settings"),
+                parseInts(props.getProperty("positions")),
+                parseInts(props.getProperty("rings")));
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        } catch (NullPointerException | NumberFormatException excp) {
+            throw error("checkpoint %s is damaged", file);
+        }
+    }
+
+    /** Store me in FILE, replacing what it held only once I have been
+     *  written out in full. */
+    void write(Path file) {
+        Properties props = new Properties();
+        props.setProperty("input.chars", Long.toString(_inputChars));
+        props.setProperty("output.bytes", Long.toString(_outputBytes));
+        props.setProperty("settings", _setting);
+        props.setProperty("positions", formatInts(_posns));
+        props.setProperty("rings", formatInts(_rings));
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            StringWriter text = new StringWriter();
+            props.store(text, "Enigma checkpoint");
+            try (FileChannel out = FileChannel.open(
+                     temp, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = ByteBuffer.wrap(
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s: %s", file,
+                        excp.getMessage());
+        }
+    }
+
+    /** Set MACHINE, already set up by my settings line, to my rotor
+     *  settings. */
+    void restore(Machine machine) {
+        if (_posns.length != machine.numRotors()
+            || _rings.length != machine.numRotors()) {
+            throw error("checkpoint does not fit the machine");
+        }
+        machine.setSettings(_posns, _rings);
+    }
+
+    /** Return the number of chars of input consumed. */
+    long inputChars() {
+        return _inputChars;
+    }
+
+    /** Return the number of bytes of output written. */
+    long outputBytes() {
+        return _outputBytes;
+    }
+
+    /** Return the settings line in force. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return INTS as a list separated by commas. */
+    private static String formatInts(int[] ints) {
+        String list = Arrays.toString(ints);
+        return list.substring(1, list.length() - 1).replace(" ", "");
+    }
+
+    /** Return the ints in the list LIST, separated by commas. */
+    private static int[] parseInts(String list) {
+        String[] words = list.split(",");
+        int[] result = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = Integer.parseInt(words[i]);
+        }
+        return result;
+    }
+
+    /** Number of chars of input consumed. */
+    private final long _inputChars;
+
+    /** Number of bytes of output written. */
+    private final long _outputBytes;
+
+    /** The settings line in force. */
+    private final String _setting;
+
+    /** Rotor settings and ring settings, by slot. */
+    private final int[] _posns, _rings;
+}
@@ -0,0 +1,49 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Miranda Cheung
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String setting = "* B Beta III IV I AXLE BCDE (YF) (ZH)";
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AXLE",
+                                             "(YF) (ZH)");
+        m.setRingstellung("BCDE");
+        m.convert("HELLOWORLDTHISISALONGERMESSAGE");
+        File file = File.createTempFile("enigma", ".ckpt");
+        file.deleteOnExit();
+        new Checkpoint(12345678901L, 42, setting, m).write(file.toPath());
+
+        Checkpoint back = Checkpoint.read(file.toPath());
+        assertEquals(12345678901L, back.inputChars());
+        assertEquals(42, back.outputBytes());
+        assertEquals(setting, back.setting());
+        Machine resumed = MachineTest.navalMachine(MachineTest.ROTORS,
+                                                   "AAAA", "(YF) (ZH)");
+        back.restore(resumed);
+        assertArrayEquals(m.settings(), resumed.settings());
+        assertEquals(m.convert("ANDTHERESTOFIT"),
+                     resumed.convert("ANDTHERESTOFIT"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDamaged() throws IOException {
+        File file = File.createTempFile("enigma", ".ckpt");
+        file.deleteOnExit();
+        Checkpoint.read(file.toPath());
+    }
+}
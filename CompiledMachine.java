@@ -0,0 +1,377 @@
+package enigma;
+
+/** An Enigma machine specialized to one configuration.  Compiling a
+ *  Machine whose rotors, settings and plugboard are set takes a snapshot
+ *  of it in which the reflector and the fixed rotors next to it are
+ *  composed into a single table, since their offsets never change; each
+ *  moving rotor's wiring is held in a table of twice the alphabet size,
+ *  indexed by input plus offset, so that the two modulo operations of
+ *  Rotor.convertForward become plain lookups; and each rotor's state is
+ *  kept as its offset (setting less ring setting), with its notches
+ *  translated to match.
+ *
+ *  For one, two and three moving rotors, the stepping and the passes
+ *  through the rotors are written out in straight-line code in their own
+ *  final classes, One, Two and Three, whose conversion path contains no
+ *  virtual calls, loops or branches (other than the stepping tests), so
+ *  the JIT can inline it completely.  Other machines use General, which
+ *  loops over the rotors.  A CompiledMachine has its own rotor settings,
+ *  starting from the Machine's at the time of compilation, and converts
+ *  exactly as the Machine would.
+ *  @author Miranda Cheung
+ */
+abstract class CompiledMachine {
+
+    /** Return a CompiledMachine for MACHINE in its current
+     *  configuration. */
+    static CompiledMachine compile(Machine machine) {
+        switch (machine.numPawls()) {
+        case 1:
+            return new One(machine);
+        case 2:
+            return new Two(machine);
+        case 3:
+            return new Three(machine);
+        default:
+            return new General(machine);
+        }
+    }
+
+    /** A snapshot of MACHINE. */
+    CompiledMachine(Machine machine) {
+        int n = machine.alphabet().size();
+        _size = n;
+        _first = machine.numRotors() - machine.numPawls();
+        _settings = machine.settings();
+        _plug = new int[n];
+        _core = new int[n];
+        _mod = new int[2 * n];
+        _succ = new int[n];
+        for (int c = 0; c < n; c++) {
+            _plug[c] = machine.plugboard().permute(c);
+            int x = c;
+            for (int k = _first - 1; k >= 0; k--) {
+                x = machine.rotor(k).convertForward(x, offset(machine, k));
+            }
+            for (int k = 1; k < _first; k++) {
+                x = machine.rotor(k).convertBackward(x, offset(machine, k));
+            }
+            _core[c] = x;
+            _mod[c] = _mod[c + n] = c;
+            _succ[c] = c + 1 == n ? 0 : c + 1;
+        }
+        int moving = machine.numPawls();
+        _forward = new int[moving][2 * n];
+        _backward = new int[moving][2 * n];
+        _notches = new boolean[moving][n];
+        _offsets = new int[moving];
+        _rings = new int[moving];
+        for (int j = 0; j < moving; j++) {
+            int k = _first + j;
+            Permutation perm = machine.rotor(k).permutation();
+            boolean[] notches = machine.rotor(k).notches();
+            _rings[j] = machine.ring(k);
+            _offsets[j] = offset(machine, k);
+            for (int i = 0; i < 2 * n; i++) {
+                _forward[j][i] = perm.permute(i % n) + n;
+                _backward[j][i] = perm.invert(i % n) + n;
+            }
+            for (int s = 0; s < n && notches != null; s++) {
+                _notches[j][s] = notches[(s + _rings[j]) % n];
+            }
+        }
+    }
+
+    /** Return the conversion of the alphabet index C, after first
+     *  advancing the machine. */
+    abstract int convert(int c);
+
+    /** Replace the LEN alphabet indices starting at MSG[OFF] with their
+     *  conversions, advancing the machine accordingly. */
+    abstract void convert(int[] msg, int off, int len);
+
+    /** Return the current settings of my rotors, indexed by slot. */
+    int[] settings() {
+        int[] result = _settings.clone();
+        for (int j = 0; j < _offsets.length; j++) {
+            result[_first + j] = (_offsets[j] + _rings[j]) % _size;
+        }
+        return result;
+    }
+
+    /** Return the offset, in [0 .. size), of the rotor in slot K of
+     *  MACHINE. */
+    private static int offset(Machine machine, int k) {
+        return machine.rotor(k).permutation().wrap(
+            machine.settings()[k] - machine.ring(k));
+    }
+
+    /** Alphabet size. */
+    protected final int _size;
+
+    /** Slot of the leftmost moving rotor. */
+    protected final int _first;
+
+    /** Settings of all slots at compilation. */
+    protected final int[] _settings;
+
+    /** The plugboard. */
+    protected final int[] _plug;
+
+    /** The composition of the fixed rotors and reflector. */
+    protected final int[] _core;
+
+    /** _mod[i] is i modulo the alphabet size, for 0 <= i < 2 * size. */
+    protected final int[] _mod;
+
+    /** _succ[s] is s + 1 modulo the alphabet size. */
+    protected final int[] _succ;
+
+    /** For each moving rotor (leftmost first), the forward wiring of
+     *  index i modulo size, plus size, at index i. */
+    protected final int[][] _forward;
+
+    /** For each moving rotor, the inverse wiring, laid out as _forward. */
+    protected final int[][] _backward;
+
+    /** For each moving rotor, true at each offset where it is at a
+     *  notch. */
+    protected final boolean[][] _notches;
+
+    /** The current offset of each moving rotor.  Only General uses this
+     *  after construction; the others copy it into fields. */
+    protected final int[] _offsets;
+
+    /** The ring setting of each moving rotor. */
+    protected final int[] _rings;
+
+    /** A machine with one moving rotor. */
+    private static final class One extends CompiledMachine {
+
+        /** A snapshot of MACHINE. */
+        One(Machine machine) {
+            super(machine);
+            _f0 = _forward[0];
+            _b0 = _backward[0];
+            _s0 = _offsets[0];
+        }
+
+        @Override
+        int convert(int c) {
+            _s0 = _succ[_s0];
+            _offsets[0] = _s0;
+            return pass(c);
+        }
+
+        @Override
+        void convert(int[] msg, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                _s0 = _succ[_s0];
+                msg[i] = pass(msg[i]);
+            }
+            _offsets[0] = _s0;
+        }
+
+        /** Return the conversion of C at the current offsets. */
+        private int pass(int c) {
+            int[] mod = _mod;
+            int x = _plug[c];
+            x = mod[_f0[x + _s0] - _s0];
+            x = _core[x];
+            x = mod[_b0[x + _s0] - _s0];
+            return _plug[x];
+        }
+
+        /** Wiring of the moving rotor. */
+        private final int[] _f0, _b0;
+
+        /** Offset of the moving rotor. */
+        private int _s0;
+    }
+
+    /** A machine with two moving rotors. */
+    private static final class Two extends CompiledMachine {
+
+        /** A snapshot of MACHINE. */
+        Two(Machine machine) {
+            super(machine);
+            _f0 = _forward[0];
+            _b0 = _backward[0];
+            _f1 = _forward[1];
+            _b1 = _backward[1];
+            _n1 = _notches[1];
+            _s0 = _offsets[0];
+            _s1 = _offsets[1];
+        }
+
+        @Override
+        int convert(int c) {
+            step();
+            _offsets[0] = _s0;
+            _offsets[1] = _s1;
+            return pass(c);
+        }
+
+        @Override
+        void convert(int[] msg, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                step();
+                msg[i] = pass(msg[i]);
+            }
+            _offsets[0] = _s0;
+            _offsets[1] = _s1;
+        }
+
+        /** Advance the rotors. */
+        private void step() {
+            if (_n1[_s1]) {
+                _s0 = _succ[_s0];
+            }
+            _s1 = _succ[_s1];
+        }
+
+        /** Return the conversion of C at the current offsets. */
+        private int pass(int c) {
+            int[] mod = _mod;
+            int x = _plug[c];
+            x = mod[_f1[x + _s1] - _s1];
+            x = mod[_f0[x + _s0] - _s0];
+            x = _core[x];
+            x = mod[_b0[x + _s0] - _s0];
+            x = mod[_b1[x + _s1] - _s1];
+            return _plug[x];
+        }
+
+        /** Wiring of the moving rotors, leftmost first. */
+        private final int[] _f0, _b0, _f1, _b1;
+
+        /** Notches of the rightmost rotor. */
+        private final boolean[] _n1;
+
+        /** Offsets of the moving rotors. */
+        private int _s0, _s1;
+    }
+
+    /** A machine with three moving rotors. */
+    private static final class Three extends CompiledMachine {
+
+        /** A snapshot of MACHINE. */
+        Three(Machine machine) {
+            super(machine);
+            _f0 = _forward[0];
+            _b0 = _backward[0];
+            _f1 = _forward[1];
+            _b1 = _backward[1];
+            _f2 = _forward[2];
+            _b2 = _backward[2];
+            _n1 = _notches[1];
+            _n2 = _notches[2];
+            _s0 = _offsets[0];
+            _s1 = _offsets[1];
+            _s2 = _offsets[2];
+        }
+
+        @Override
+        int convert(int c) {
+            step();
+            _offsets[0] = _s0;
+            _offsets[1] = _s1;
+            _offsets[2] = _s2;
+            return pass(c);
+        }
+
+        @Override
+        void convert(int[] msg, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                step();
+                msg[i] = pass(msg[i]);
+            }
+            _offsets[0] = _s0;
+            _offsets[1] = _s1;
+            _offsets[2] = _s2;
+        }
+
+        /** Advance the rotors, double-stepping the middle one. */
+        private void step() {
+            boolean middle = _n1[_s1];
+            if (middle) {
+                _s0 = _succ[_s0];
+            }
+            if (middle || _n2[_s2]) {
+                _s1 = _succ[_s1];
+            }
+            _s2 = _succ[_s2];
+        }
+
+        /** Return the conversion of C at the current offsets. */
+        private int pass(int c) {
+            int[] mod = _mod;
+            int x = _plug[c];
+            x = mod[_f2[x + _s2] - _s2];
+            x = mod[_f1[x + _s1] - _s1];
+            x = mod[_f0[x + _s0] - _s0];
+            x = _core[x];
+            x = mod[_b0[x + _s0] - _s0];
+            x = mod[_b1[x + _s1] - _s1];
+            x = mod[_b2[x + _s2] - _s2];
+            return _plug[x];
+        }
+
+        /** Wiring of the moving rotors, leftmost first. */
+        private final int[] _f0, _b0, _f1, _b1, _f2, _b2;
+
+        /** Notches of the middle and rightmost rotors. */
+        private final boolean[] _n1, _n2;
+
+        /** Offsets of the moving rotors. */
+        private int _s0, _s1, _s2;
+    }
+
+    /** A machine with any number of moving rotors. */
+    private static final class General extends CompiledMachine {
+
+        /** A snapshot of MACHINE. */
+        General(Machine machine) {
+            super(machine);
+        }
+
+        @Override
+        int convert(int c) {
+            step();
+            return pass(c);
+        }
+
+        @Override
+        void convert(int[] msg, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                step();
+                msg[i] = pass(msg[i]);
+            }
+        }
+
+        /** Advance the rotors as Machine.whichRotates does. */
+        private void step() {
+            int last = _offsets.length - 1;
+            for (int j = 0; j <= last; j++) {
+                boolean right = j < last && _notches[j + 1][_offsets[j + 1]];
+                boolean here = j > 0 && _notches[j][_offsets[j]];
+                if (j == last || right || here) {
+                    _offsets[j] = _succ[_offsets[j]];
+                }
+            }
+        }
+
+        /** Return the conversion of C at the current offsets. */
+        private int pass(int c) {
+            int x = _plug[c];
+            for (int j = _offsets.length - 1; j >= 0; j--) {
+                x = _mod[_forward[j][x + _offsets[j]] - _offsets[j]];
+            }
+            x = _core[x];
+            for (int j = 0; j < _offsets.length; j++) {
+                x = _mod[_backward[j][x + _offsets[j]] - _offsets[j]];
+            }
+            return _plug[x];
+        }
+    }
+}
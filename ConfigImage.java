@@ -0,0 +1,375 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A configuration compiled into a binary image: the alphabet, the
+ *  numbers of rotor slots and pawls, and every rotor's name, kind,
+ *  notches and wiring table, with identical wirings stored once.  An
+ *  image is memory-mapped when loaded, and nothing is read from it
+ *  until it is needed: rotors are found through a hash index of their
+ *  names stored in the image, and each is built only when first asked
+ *  for.  Loading therefore takes about the same time however many
+ *  rotors the image holds.
+ *
+ *  An image is a header of HEADER ints, then the alphabet's code
+ *  points, the wiring tables, a record of RECORD ints for each rotor
+ *  (kind, wiring number, offset and length of its notches in the notch
+ *  pool and of its name in the name pool), the name index (record
+ *  number plus one, or 0 in empty slots), the notch pool, and finally
+ *  the names, in UTF-8.  The sizes of the sections are checked against
+ *  the length of the file when it is loaded, and each record, notch and
+ *  wiring table is checked when it is first read, so that a damaged
+ *  image is reported as such rather than as an arbitrary failure.  An
+ *  image cannot be added to.
+ *  @author Miranda Cheung
+ */
+class ConfigImage extends RotorRegistry {
+
+    /** Write an image of a configuration with alphabet ALPHABET,
+     *  NUMROTORS slots, PAWLS pawls and the rotors in ROTORS to FILE.
+     *  Every rotor is built, so any error in the configuration is found
+     *  here. */
+    static void write(File file, Alphabet alphabet, int numRotors,
+                      int pawls, RotorRegistry rotors) {
+        int n = alphabet.size();
+        ArrayList<String> names = rotors.names();
+        HashMap<Permutation, Integer> wiringNums = new HashMap<>();
+        ArrayList<Permutation> wirings = new ArrayList<>();
+        ArrayList<Integer> notchPool = new ArrayList<>();
+        int[] records = new int[RECORD * names.size()];
+        int capacity = Integer.highestOneBit(2 * names.size() + 1) << 1;
+        int[] index = new int[capacity];
+        byte[][] nameBytes = new byte[names.size()][];
+        int namesLen = 0;
+        for (int r = 0; r < names.size(); r++) {
+            Rotor rotor = rotors.get(names.get(r));
+            Permutation perm = rotor.permutation();
+            if (!wiringNums.containsKey(perm)) {
+                wiringNums.put(perm, wirings.size());
+                wirings.add(perm);
+            }
+            records[RECORD * r] = rotor.reflecting() ? 'R'
+                : rotor.rotates() ? 'M' : 'N';
+            records[RECORD * r + 1] = wiringNums.get(perm);
+            int firstNotch = notchPool.size();
+            records[RECORD * r + 2] = firstNotch;
+            boolean[] notches = rotor.notches();
+            for (int p = 0; notches != null && p < n; p++) {
+                if (notches[p]) {
+                    notchPool.add(p);
+                }
+            }
+            records[RECORD * r + 3] = notchPool.size() - firstNotch;
+            nameBytes[r] = names.get(r).getBytes(StandardCharsets.UTF_8);
+            records[RECORD * r + 4] = namesLen;
+            records[RECORD * r + 5] = nameBytes[r].length;
+            namesLen += nameBytes[r].length;
+            int h = slot(names.get(r), capacity);
+            while (index[h] != 0) {
+                h = (h + 1) & (capacity - 1);
+            }
+            index[h] = r + 1;
+        }
+        long ints = HEADER + n + (long) wirings.size() * n + records.length
+            + capacity + notchPool.size();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            MappedByteBuffer map = channel.map(
+                FileChannel.MapMode.READ_WRITE, 0, 4 * ints + namesLen);
+            IntBuffer out = map.asIntBuffer();
+            out.put(MAGIC).put(VERSION).put(n).put(numRotors).put(pawls);
+            out.put(names.size()).put(wirings.size()).put(capacity);
+            out.put(notchPool.size()).put(namesLen);
+            for (int k = 0; k < n; k++) {
+                out.put(alphabet.toCodePoint(k));
+            }
+            for (Permutation perm : wirings) {
+                for (int k = 0; k < n; k++) {
+                    out.put(perm.permute(k));
+                }
+            }
+            out.put(records).put(index);
+            for (int p : notchPool) {
+                out.put(p);
+            }
+            map.position((int) (4 * ints));
+            for (byte[] name : nameBytes) {
+                map.put(name);
+            }
+            map.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return true iff FILE begins as an image does. */
+    static boolean isImage(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= 4 * HEADER && raf.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the configuration whose image is in FILE. */
+    static ConfigImage load(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer in = map.asIntBuffer();
+            if (in.limit() < HEADER || in.get(0) != MAGIC) {
+                throw error("%s is not a configuration image", file);
+            } else if (in.get(1) != VERSION) {
+                throw error("%s has unsupported version %d", file,
+                            in.get(1));
+            }
+            int n = in.get(2);
+            if (n <= 0 || n > in.limit() - HEADER) {
+                throw error("%s is damaged", file);
+            }
+            int[] codePoints = new int[n];
+            in.get(HEADER, codePoints);
+            Alphabet alphabet = new Alphabet(new String(codePoints, 0, n));
+            return new ConfigImage(file, map, alphabet);
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** The image of FILE, mapped at MAP, with alphabet ALPHABET. */
+    private ConfigImage(File file, ByteBuffer map, Alphabet alphabet) {
+        super(alphabet);
+        _file = file;
+        _alphabet = alphabet;
+        _ints = map.asIntBuffer();
+        int n = alphabet.size();
+        _numRotors = _ints.get(3);
+        _pawls = _ints.get(4);
+        _count = _ints.get(5);
+        _numWirings = _ints.get(6);
+        _capacity = _ints.get(7);
+        _numNotches = _ints.get(8);
+        int namesLen = _ints.get(9);
+        long ints = HEADER + n + (long) _numWirings * n
+            + (long) RECORD * _count + _capacity + _numNotches;
+        if (_count < 0 || _numWirings < 0 || _numNotches < 0
+            || namesLen < 0 || Integer.bitCount(_capacity) != 1
+            || _capacity <= _count || 4 * ints + namesLen != map.limit()) {
+            throw damaged();
+        }
+        _wiringsAt = HEADER + n;
+        _recordsAt = _wiringsAt + _numWirings * n;
+        _indexAt = _recordsAt + RECORD * _count;
+        _notchesAt = _indexAt + _capacity;
+        int namesAt = 4 * (_notchesAt + _numNotches);
+        _names = map.position(namesAt).slice();
+        _rotors = new Rotor[_count];
+        _wirings = new Permutation[_numWirings];
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots of my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls of my machines. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    @Override
+    synchronized void add(Rotor rotor) {
+        throw error("cannot add %s to image %s", rotor.name(), _file);
+    }
+
+    @Override
+    synchronized void add(String name, char type, String notches,
+                          String cycles) {
+        throw error("cannot add %s to image %s", name, _file);
+    }
+
+    @Override
+    synchronized int size() {
+        return _count;
+    }
+
+    @Override
+    synchronized boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    @Override
+    synchronized Rotor get(String name) {
+        int r = find(name);
+        if (r < 0) {
+            throw error("no rotor named %s", name);
+        } else if (_rotors[r] != null) {
+            return _rotors[r];
+        }
+        int at = _recordsAt + RECORD * r;
+        int type = _ints.get(at), w = _ints.get(at + 1);
+        if (w < 0 || w >= _numWirings) {
+            throw damaged();
+        }
+        if (_wirings[w] == null) {
+            int n = _alphabet.size();
+            int[] table = new int[n];
+            _ints.get(_wiringsAt + w * n, table);
+            try {
+                _wirings[w] = new Permutation(_alphabet, table);
+            } catch (EnigmaException excp) {
+                throw damaged();
+            }
+        }
+        Permutation perm = _wirings[w];
+        if (type == 'M') {
+            boolean[] notches = new boolean[_alphabet.size()];
+            int first = _ints.get(at + 2), count = _ints.get(at + 3);
+            if (first < 0 || count < 0 || count > _numNotches - first) {
+                throw damaged();
+            }
+            for (int p = 0; p < count; p++) {
+                int notch = _ints.get(_notchesAt + first + p);
+                if (notch < 0 || notch >= notches.length) {
+                    throw damaged();
+                }
+                notches[notch] = true;
+            }
+            _rotors[r] = new MovingRotor(name, perm, notches);
+        } else if (type == 'R') {
+            _rotors[r] = new Reflector(name, perm);
+        } else if (type == 'N') {
+            _rotors[r] = new FixedRotor(name, perm);
+        } else {
+            throw damaged();
+        }
+        return _rotors[r];
+    }
+
+    @Override
+    synchronized ArrayList<String> names() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int r = 0; r < _count; r++) {
+            byte[] name = new byte[nameLength(r)];
+            _names.get(_ints.get(_recordsAt + RECORD * r + 4), name);
+            result.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    @Override
+    synchronized int numWirings() {
+        return _numWirings;
+    }
+
+    /** Return the record number of the rotor named NAME, or -1 if there
+     *  is none. */
+    private int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int h = slot(name, _capacity);
+        for (int k = 0; k < _capacity; k++) {
+            int r = _ints.get(_indexAt + h) - 1;
+            if (r < 0) {
+                return -1;
+            } else if (r >= _count) {
+                throw damaged();
+            }
+            if (nameLength(r) == bytes.length
+                && matches(_ints.get(_recordsAt + RECORD * r + 4), bytes)) {
+                return r;
+            }
+            h = (h + 1) & (_capacity - 1);
+        }
+        throw damaged();
+    }
+
+    /** Return the length of the name of rotor R, having checked that
+     *  the name lies within the name pool. */
+    private int nameLength(int r) {
+        int at = _recordsAt + RECORD * r;
+        int offset = _ints.get(at + 4), length = _ints.get(at + 5);
+        if (offset < 0 || length < 0 || length > _names.limit() - offset) {
+            throw damaged();
+        }
+        return length;
+    }
+
+    /** Return an exception reporting that my image is damaged. */
+    private EnigmaException damaged() {
+        return error("%s is damaged", _file);
+    }
+
+    /** Return true iff the name pool holds BYTES starting at OFFSET. */
+    private boolean matches(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (_names.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the first slot to probe for NAME in an index with
+     *  CAPACITY slots. */
+    private static int slot(String name, int capacity) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /** Identifies a configuration image. */
+    private static final int MAGIC = 0x454e4347;
+
+    /** Version of the image format. */
+    private static final int VERSION = 1;
+
+    /** Number of ints in the header. */
+    private static final int HEADER = 10;
+
+    /** Number of ints describing each rotor. */
+    private static final int RECORD = 6;
+
+    /** The file holding my image. */
+    private final File _file;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Numbers of slots, pawls, rotors, wirings and index slots. */
+    private final int _numRotors, _pawls, _count, _numWirings, _capacity;
+
+    /** Number of ints in the notch pool. */
+    private final int _numNotches;
+
+    /** Positions, in ints, of the sections of the image. */
+    private final int _wiringsAt, _recordsAt, _indexAt, _notchesAt;
+
+    /** The image, as ints. */
+    private final IntBuffer _ints;
+
+    /** The name pool. */
+    private final ByteBuffer _names;
+
+    /** Each rotor, once built, by record number. */
+    private final Rotor[] _rotors;
+
+    /** Each wiring, once built, by number. */
+    private final Permutation[] _wirings;
+}
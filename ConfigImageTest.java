@@ -0,0 +1,130 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigImage class.
+ *  @author Miranda Cheung
+ */
+public class ConfigImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        RotorRegistry reg = new RotorRegistry(UPPER);
+        reg.add("B", 'R', "", NAVALA.get("B"));
+        reg.add("Beta", 'N', "", NAVALA.get("Beta"));
+        reg.add("I", 'M', "Q", NAVALA.get("I"));
+        reg.add("VI", 'M', "ZM", NAVALA.get("VI"));
+        reg.add("Same", 'N', "", NAVALA.get("VI"));
+        File file = File.createTempFile("enigma", ".img");
+        file.deleteOnExit();
+        ConfigImage.write(file, UPPER, 5, 3, reg);
+        assertTrue(ConfigImage.isImage(file));
+
+        ConfigImage img = ConfigImage.load(file);
+        assertEquals(UPPER_STRING, img.alphabet().getAlphabetString());
+        assertEquals(5, img.numRotors());
+        assertEquals(3, img.numPawls());
+        assertEquals(5, img.size());
+        assertEquals(4, img.numWirings());
+        assertEquals(reg.names(), img.names());
+        assertTrue(img.contains("VI"));
+        assertFalse(img.contains("V"));
+        for (String name : reg.names()) {
+            Rotor want = reg.get(name), got = img.get(name);
+            assertEquals(name, got.name());
+            assertEquals(want.rotates(), got.rotates());
+            assertEquals(want.reflecting(), got.reflecting());
+            for (int c = 0; c < 26; c++) {
+                assertEquals(want.permutation().permute(c),
+                             got.permutation().permute(c));
+                assertEquals(want.rotates() && want.notches()[c],
+                             got.rotates() && got.notches()[c]);
+            }
+        }
+        assertSame(img.get("VI").permutation(),
+                   img.get("Same").permutation());
+    }
+
+    @Test
+    public void testNotImage() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        assertFalse(ConfigImage.isImage(file));
+    }
+
+    /** Return a file holding an image of rotors B and I. */
+    private static File image() throws IOException {
+        RotorRegistry reg = new RotorRegistry(UPPER);
+        reg.add("B", 'R', "", NAVALA.get("B"));
+        reg.add("I", 'M', "Q", NAVALA.get("I"));
+        File file = File.createTempFile("enigma", ".img");
+        file.deleteOnExit();
+        ConfigImage.write(file, UPPER, 2, 1, reg);
+        return file;
+    }
+
+    /** Write VALUE over the int at byte offset OFFSET of FILE. */
+    private static void poke(File file, long offset, int value)
+        throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() throws IOException {
+        File file = image();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        ConfigImage.load(file);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDamagedAlphabetSize() throws IOException {
+        File file = image();
+        poke(file, 4 * 2, Integer.MAX_VALUE);
+        ConfigImage.load(file);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDamagedWiring() throws IOException {
+        File file = image();
+        poke(file, 4 * (10 + 26), 26);
+        ConfigImage.load(file).get("B");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDamagedNotch() throws IOException {
+        File file = image();
+        long notchAt;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(4 * 9);
+            notchAt = raf.length() - raf.readInt() - 4;
+        }
+        poke(file, notchAt, 26);
+        ConfigImage img = ConfigImage.load(file);
+        assertTrue(img.contains("I"));
+        img.get("I");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAdd() throws IOException {
+        ConfigImage img = ConfigImage.load(image());
+        img.add("II", 'M', "E", NAVALA.get("II"));
+    }
+}
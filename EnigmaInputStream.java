@@ -0,0 +1,72 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An input stream that converts, with a ByteCipher, every byte read
+ *  from another stream.  Marks are not supported, and skipped bytes are
+ *  converted and discarded so that the cipher stays in step.
+ *  @author Miranda Cheung
+ */
+class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream converting the bytes of IN with CIPHER. */
+    EnigmaInputStream(InputStream in, ByteCipher cipher) {
+        super(in);
+        _cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        return b < 0 ? b : _cipher.convert((byte) b) & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        int n = in.read(buf, off, len);
+        if (n > 0) {
+            _cipher.convert(buf, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(Math.max(n, 0), SKIP_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        /* Marks are not supported. */
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /** Most bytes read at once when skipping. */
+    private static final int SKIP_SIZE = 1 << 13;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Converts the bytes read. */
+    private final ByteCipher _cipher;
+}
@@ -0,0 +1,44 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** An output stream that converts, with a ByteCipher, every byte written
+ *  to it before passing it on to another stream.  The caller's arrays
+ *  are never changed: bytes are converted in a buffer of my own.
+ *  @author Miranda Cheung
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /** A stream converting bytes with CIPHER and writing them to OUT. */
+    EnigmaOutputStream(OutputStream out, ByteCipher cipher) {
+        super(out);
+        _cipher = cipher;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(_cipher.convert((byte) b));
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _buf.length);
+            _cipher.convert(buf, off, n, _buf, 0);
+            out.write(_buf, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Size of my buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Converts the bytes written. */
+    private final ByteCipher _cipher;
+
+    /** Converted bytes. */
+    private final byte[] _buf = new byte[BUFFER_SIZE];
+}
@@ -0,0 +1,244 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** A long-lived service that converts messages for clients over a local
+ *  TCP or Unix-domain socket, using one configuration read at startup.
+ *  A client sends any number of requests on a connection, each two
+ *  frames: a settings line and a message.  A frame is a 4-byte length
+ *  followed by that many bytes of UTF-8.  For each request the server
+ *  answers with a status byte (OK or FAILED) and one frame: the
+ *  message, without its spaces, converted under the settings line
+ *  (and not divided into groups), or the error that prevented it.
+ *
+ *  Each connection is served on its own thread, with its own Machine,
+ *  so concurrent requests share only the rotors' unchanging wirings.
+ *  A connection also keeps the Settings for the last settings line it
+ *  was sent, and looks a line up in the shared cache only when it
+ *  changes, so connections repeating one line do not contend for the
+ *  cache's lock.  Where the runtime has virtual threads (Java 21 and
+ *  later), those are used; on older runtimes, connections get platform
+ *  threads from a cached pool.  Tested with up to 4000 connections at
+ *  once, using platform threads on Java 17 on one processor; more
+ *  connections arriving at once than the listen backlog (BACKLOG, or
+ *  the system's limit if lower) may be refused.  The time taken by each
+ *  request, from its last byte arriving to the reply being ready to
+ *  send, is kept in a LatencyHistogram.
+ *  @author Miranda Cheung
+ */
+class EnigmaServer implements Closeable {
+
+    /** Reply status for a converted message. */
+    static final int OK = 0;
+
+    /** Reply status for a request that failed. */
+    static final int FAILED = 1;
+
+    /** A server converting with copies of MACHINE, finding the Settings
+     *  for each settings line with SETTINGS. */
+    EnigmaServer(Machine machine, Function<String, Settings> settings) {
+        _machine = machine;
+        _settings = settings;
+    }
+
+    /** Return the address named by NAME: "unix:PATH" for a Unix-domain
+     *  socket, "HOST:PORT", or just "PORT" on the loopback address. */
+    static SocketAddress address(String name) {
+        try {
+            if (name.startsWith(UNIX_PREFIX)) {
+                return UnixDomainSocketAddress.of(
+                    name.substring(UNIX_PREFIX.length()));
+            }
+            int colon = name.lastIndexOf(':');
+            if (colon < 0) {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             Integer.parseInt(name));
+            }
+            return new InetSocketAddress(name.substring(0, colon),
+                                         Integer.parseInt(
+                                             name.substring(colon + 1)));
+        } catch (IllegalArgumentException excp) {
+            throw error("bad address %s", name);
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread
+     *  if the runtime has them, and otherwise on a pooled daemon
+     *  thread. */
+    static ExecutorService threadPerTask() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Listen at ADDRESS and return the channel listened on. */
+    ServerSocketChannel bind(SocketAddress address) throws IOException {
+        ServerSocketChannel server =
+            address instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+        server.bind(address, BACKLOG);
+        _server = server;
+        return server;
+    }
+
+    /** Accept and serve connections on the channel from bind until
+     *  close is called.  Then close the connections still open, and
+     *  return once every connection's thread has finished, so that the
+     *  latencies of all requests answered have been recorded. */
+    void serve() throws IOException {
+        ExecutorService workers = threadPerTask();
+        try {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = _server.accept();
+                } catch (ClosedChannelException excp) {
+                    return;
+                }
+                workers.execute(() -> serve(client));
+            }
+        } finally {
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE,
+                                         TimeUnit.NANOSECONDS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Return the latencies of the requests served so far. */
+    LatencyHistogram latencies() {
+        return _latencies;
+    }
+
+    /** Stop accepting connections. */
+    @Override
+    public void close() throws IOException {
+        if (_server != null) {
+            _server.close();
+        }
+    }
+
+    /** Serve the requests sent on CLIENT until it closes. */
+    private void serve(SocketChannel client) {
+        Machine machine = new Machine(_machine);
+        String lastLine = null;
+        Settings last = null;
+        try (SocketChannel channel = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            while (true) {
+                String setting = readFrame(in, true);
+                if (setting == null) {
+                    return;
+                }
+                String message = readFrame(in, false);
+                long start = System.nanoTime();
+                try {
+                    if (!setting.equals(lastLine)) {
+                        last = _settings.apply(setting);
+                        lastLine = setting;
+                    }
+                    last.apply(machine);
+                    String result =
+                        machine.convert(message.replace(" ", ""));
+                    out.writeByte(OK);
+                    writeFrame(out, result);
+                } catch (EnigmaException excp) {
+                    out.writeByte(FAILED);
+                    writeFrame(out, excp.getMessage());
+                }
+                _latencies.record(System.nanoTime() - start);
+                out.flush();
+            }
+        } catch (IOException | EnigmaException excp) {
+            /* The client went away or broke the protocol: drop it. */
+        }
+    }
+
+    /** Return the next frame from IN, or null if IN has ended before it
+     *  and ENDOK. */
+    static String readFrame(DataInputStream in, boolean endOk)
+        throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException excp) {
+            if (endOk) {
+                return null;
+            }
+            throw excp;
+        }
+        if (len < 0 || len > MAX_FRAME) {
+            throw error("bad frame length %d", len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write TEXT to OUT as a frame. */
+    static void writeFrame(DataOutputStream out, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Prefix of the names of Unix-domain socket addresses. */
+    private static final String UNIX_PREFIX = "unix:";
+
+    /** Largest frame accepted, in bytes. */
+    private static final int MAX_FRAME = 1 << 24;
+
+    /** Number of connections that may wait to be accepted. */
+    private static final int BACKLOG = 1 << 12;
+
+    /** The machine whose copies serve connections. */
+    private final Machine _machine;
+
+    /** Finds the Settings for a settings line. */
+    private final Function<String, Settings> _settings;
+
+    /** Latencies of the requests served. */
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+
+    /** The channel listened on, once bound. */
+    private volatile ServerSocketChannel _server;
+}
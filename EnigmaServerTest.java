@@ -0,0 +1,92 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Miranda Cheung
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Parses settings lines for 5-slot machines with the naval
+     *  rotors. */
+    private static final Function<String, Settings> PARSE = line -> {
+        RotorRegistry rotors = new RotorRegistry(UPPER);
+        for (String name : NAVALA.keySet()) {
+            rotors.add(name, 'N', "", "");
+        }
+        return new Settings(line, UPPER, 5, rotors);
+    };
+
+    @Test
+    public void testRequests() throws Exception {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        EnigmaServer server = new EnigmaServer(m, PARSE);
+        ServerSocketChannel listener = server.bind(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0));
+        AtomicReference<IOException> error = new AtomicReference<>();
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                error.set(excp);
+            }
+        });
+        serving.start();
+        try (SocketChannel channel =
+             SocketChannel.open(listener.getLocalAddress());
+             DataInputStream in = new DataInputStream(
+                 Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(
+                 Channels.newOutputStream(channel))) {
+            for (int i = 0; i < 2; i++) {
+                EnigmaServer.writeFrame(out, "* B Beta III IV I AXLE (YF) "
+                                        + "(ZH)");
+                EnigmaServer.writeFrame(out, "HELLO WORLD");
+                assertEquals(EnigmaServer.OK, in.readUnsignedByte());
+                assertEquals("SZVGJHUKSG", EnigmaServer.readFrame(in, false));
+            }
+            EnigmaServer.writeFrame(out, "* B Beta III IV");
+            EnigmaServer.writeFrame(out, "HELLO");
+            assertEquals(EnigmaServer.FAILED, in.readUnsignedByte());
+            EnigmaServer.readFrame(in, false);
+        }
+        server.close();
+        serving.join();
+        if (error.get() != null) {
+            throw error.get();
+        }
+        assertEquals(3, server.latencies().count());
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(500, h.percentile(0.5), 500 * 0.04);
+        assertEquals(990, h.percentile(0.99), 990 * 0.04);
+        assertTrue(h.percentile(1) >= 1000);
+    }
+}
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the bytes of a file in place or into another file, through
+ *  memory maps and without decoding them into chars.  Each byte that is
+ *  a character of the machine's alphabet is converted; every other byte
+ *  (spaces, line ends, punctuation) is copied unchanged and does not
+ *  advance the rotors.  The alphabet must therefore be ASCII.  The file
+ *  is divided into regions, of REGION bytes by default.  A first
+ *  parallel pass counts the alphabet bytes in each region, which gives,
+ *  through seek, the rotor settings at the start of each, and a second
+ *  parallel pass converts the regions independently, each with its own
+ *  CompiledMachine.
+ *  @author Miranda Cheung
+ */
+class FileConverter {
+
+    /** A converter using MACHINE, whose rotors and plugboard must be
+     *  set.  Converting advances MACHINE past the characters
+     *  converted. */
+    FileConverter(Machine machine) {
+        this(machine, REGION);
+    }
+
+    /** A converter using MACHINE that converts regions of REGION bytes
+     *  in parallel. */
+    FileConverter(Machine machine, int region) {
+        _machine = machine;
+        _region = region;
+        Alphabet alpha = machine.alphabet();
+        _index = new int[BYTES];
+        _byte = new byte[alpha.size()];
+        Arrays.fill(_index, -1);
+        for (int k = 0; k < alpha.size(); k++) {
+            int cp = alpha.toCodePoint(k);
+            if (cp >= ASCII) {
+                throw error("mapped conversion needs an ASCII alphabet");
+            }
+            _index[cp] = k;
+            _byte[k] = (byte) cp;
+        }
+    }
+
+    /** Convert the LENGTH bytes of IN starting at START, writing the
+     *  results to OUT at the same positions.  IN and OUT may be the same
+     *  channel.  Returns the number of bytes converted. */
+    long convert(FileChannel in, FileChannel out, long start, long length)
+        throws IOException {
+        int regions = (int) ((length + _region - 1) / _region);
+        long[] before = new long[regions + 1];
+        IOException[] failure = new IOException[1];
+        IntStream.range(0, regions).parallel().forEach(r -> {
+            try {
+                before[r + 1] = count(in, start + (long) r * _region,
+                                      regionLength(r, length));
+            } catch (IOException excp) {
+                failure[0] = excp;
+            }
+        });
+        rethrow(failure);
+        for (int r = 0; r < regions; r++) {
+            before[r + 1] += before[r];
+        }
+        IntStream.range(0, regions).parallel().forEach(r -> {
+            Machine machine = new Machine(_machine);
+            machine.seek(before[r]);
+            try {
+                convert(in, out, start + (long) r * _region,
+                        regionLength(r, length),
+                        CompiledMachine.compile(machine));
+            } catch (IOException excp) {
+                failure[0] = excp;
+            }
+        });
+        rethrow(failure);
+        _machine.seek(before[regions]);
+        return before[regions];
+    }
+
+    /** Return the length of region R of a range of LENGTH bytes. */
+    private int regionLength(int r, long length) {
+        return (int) Math.min(_region, length - (long) r * _region);
+    }
+
+    /** Return the number of alphabet bytes among the LEN bytes of IN
+     *  starting at POS. */
+    private long count(FileChannel in, long pos, int len) throws IOException {
+        MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        byte[] buf = new byte[Math.min(len, BLOCK)];
+        long result = 0;
+        while (map.hasRemaining()) {
+            int n = Math.min(buf.length, map.remaining());
+            map.get(buf, 0, n);
+            for (int i = 0; i < n; i++) {
+                if (_index[buf[i] & 0xff] >= 0) {
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Convert the LEN bytes of IN starting at POS into OUT at the same
+     *  positions, with ENGINE. */
+    private void convert(FileChannel in, FileChannel out, long pos, int len,
+                         CompiledMachine engine) throws IOException {
+        MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        MappedByteBuffer dest =
+            out.map(FileChannel.MapMode.READ_WRITE, pos, len);
+        byte[] buf = new byte[Math.min(len, BLOCK)];
+        int[] chars = new int[buf.length];
+        while (src.hasRemaining()) {
+            int n = Math.min(buf.length, src.remaining()), m = 0;
+            src.get(buf, 0, n);
+            for (int i = 0; i < n; i++) {
+                int k = _index[buf[i] & 0xff];
+                if (k >= 0) {
+                    chars[m++] = k;
+                }
+            }
+            engine.convert(chars, 0, m);
+            for (int i = 0, j = 0; i < n; i++) {
+                if (_index[buf[i] & 0xff] >= 0) {
+                    buf[i] = _byte[chars[j++]];
+                }
+            }
+            dest.put(buf, 0, n);
+        }
+        dest.force();
+    }
+
+    /** Throw the exception in FAILURE[0], if any. */
+    private static void rethrow(IOException[] failure) throws IOException {
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /** Number of byte values. */
+    private static final int BYTES = 256;
+
+    /** Code points below this are ASCII. */
+    private static final int ASCII = 128;
+
+    /** Default size of the regions converted in parallel. */
+    static final int REGION = 1 << 26;
+
+    /** Number of bytes copied out of a map at a time. */
+    private static final int BLOCK = 1 << 16;
+
+    /** The machine whose settings start the conversion. */
+    private final Machine _machine;
+
+    /** Size of the regions converted in parallel. */
+    private final int _region;
+
+    /** The alphabet index of each byte, or -1 if it is not in the
+     *  alphabet. */
+    private final int[] _index;
+
+    /** The byte for each alphabet index. */
+    private final byte[] _byte;
+}
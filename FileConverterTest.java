@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static enigma.MachineTest.navalMachine;
+
+/** The suite of all JUnit tests for the FileConverter class.
+ *  @author Miranda Cheung
+ */
+public class FileConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Rotors used in these tests. */
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /** Return a random text of LENGTH letters, spaces and line ends. */
+    private static String text(int length) {
+        Random random = new Random(length);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ  \n,";
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return TEXT converted by MACHINE a character at a time, with
+     *  other characters than letters left as they are. */
+    private static String expected(Machine machine, String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c >= 'A' && c <= 'Z') {
+                result.append((char) ('A' + machine.convert(c - 'A')));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testRegions() throws IOException {
+        String text = text(10000);
+        File in = File.createTempFile("enigma", ".in"),
+            out = File.createTempFile("enigma", ".out");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Files.write(in.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        Machine machine = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        Machine check = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        try (FileChannel src = FileChannel.open(in.toPath(),
+                                                StandardOpenOption.READ);
+             FileChannel dest = FileChannel.open(out.toPath(),
+                                                 StandardOpenOption.READ,
+                                                 StandardOpenOption.WRITE)) {
+            long n = new FileConverter(machine, 777).convert(src, dest, 10,
+                                                             8990);
+            assertEquals(text.substring(10, 9000).replaceAll("[^A-Z]", "")
+                         .length(), n);
+        }
+        String want = expected(check, text.substring(10, 9000));
+        assertEquals(want, read(out).substring(10, 9000));
+        assertEquals(check.convert(0), machine.convert(0));
+    }
+
+    @Test
+    public void testInPlace() throws IOException {
+        String text = text(5000);
+        File file = File.createTempFile("enigma", ".in");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        Machine machine = navalMachine(ROTORS, "ZZZZ", "(AB) (CD)");
+        Machine check = navalMachine(ROTORS, "ZZZZ", "(AB) (CD)");
+        try (FileChannel chan = FileChannel.open(file.toPath(),
+                                                 StandardOpenOption.READ,
+                                                 StandardOpenOption.WRITE)) {
+            new FileConverter(machine, 1000).convert(chan, chan, 0, 5000);
+        }
+        assertEquals(expected(check, text), read(file));
+    }
+}
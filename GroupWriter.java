@@ -0,0 +1,95 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes converted message lines in groups of five characters
+ *  separated by spaces (except that the last group of a line may have
+ *  fewer), one line at a time and a chunk at a time, through a buffer
+ *  of its own.  Characters outside the Basic Multilingual Plane count
+ *  as one character.
+ *  @author Miranda Cheung
+ */
+class GroupWriter {
+
+    /** A writer of groups to OUTPUT. */
+    GroupWriter(Writer output) {
+        _output = output;
+    }
+
+    /** Write the LEN chars starting at BUF[OFF] as the next part of the
+     *  current line. */
+    void write(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = buf[i];
+            if (!Character.isLowSurrogate(c)) {
+                if (_column == GROUP) {
+                    put(' ');
+                    _column = 0;
+                }
+                _column += 1;
+            }
+            put(c);
+        }
+    }
+
+    /** Write the LEN chars starting at BUF[OFF], which must be whole
+     *  lines already divided into groups. */
+    void writeLines(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            put(buf[i]);
+        }
+        _column = 0;
+    }
+
+    /** End the current line. */
+    void endLine() throws IOException {
+        put('\n');
+        _column = 0;
+    }
+
+    /** Write out everything written to me so far. */
+    void flush() throws IOException {
+        _output.write(_buf, 0, _len);
+        _len = 0;
+        _output.flush();
+    }
+
+    /** Write out everything written to me so far, and close my
+     *  output. */
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _output.close();
+        }
+    }
+
+    /** Append C to my buffer. */
+    private void put(char c) throws IOException {
+        if (_len == _buf.length) {
+            _output.write(_buf, 0, _len);
+            _len = 0;
+        }
+        _buf[_len++] = c;
+    }
+
+    /** Number of characters in a group. */
+    private static final int GROUP = 5;
+
+    /** Size of my buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where my output goes. */
+    private final Writer _output;
+
+    /** Output not yet written to _output is _buf[0 .. _len - 1]. */
+    private final char[] _buf = new char[BUFFER_SIZE];
+
+    /** Number of chars in _buf. */
+    private int _len;
+
+    /** Number of characters in the current group of the current line,
+     *  or 0 at the start of a line. */
+    private int _column;
+}
@@ -0,0 +1,402 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotors of a message: for each
+ *  rotor order, each start position of the rotors and each ring setting
+ *  of the rightmost rotor, it decrypts the message as if there were no
+ *  plugboard and scores the result by its index of coincidence, the
+ *  chance that two of its letters picked at random are the same.  A
+ *  decryption under the right rotors reads much like the plaintext,
+ *  whose letters are far from evenly used, even though the plugboard
+ *  has swapped some of them, so it scores well above the rest, which
+ *  look random.  The best candidates are kept, and may then be used to
+ *  look for the plugboard.
+ *
+ *  The ring settings of the other rotors are not searched, since each
+ *  merely shifts a rotor's wiring, which its start position already
+ *  covers, and the turnover of the rotor to its left, which is rare
+ *  within a message; they are reported at the first letter.  The
+ *  stepping of the rotors depends only on their settings, so it is
+ *  followed once for each start position and shared by all the ring
+ *  settings of the rightmost rotor.  Each letter is then a few table
+ *  lookups: the rightmost rotor's wiring on either side of a table for
+ *  the rest of the scrambler at the settings of the rotors to its left,
+ *  made for every such setting once per rotor order.  The search is
+ *  divided among the threads of a work-stealing pool by rotor order and
+ *  by start position, each part keeping its best candidates in a
+ *  bounded heap.
+ *  @author Miranda Cheung
+ */
+class IocSearch {
+
+    /** Usual number of candidates kept. */
+    static final int TOP = 10;
+
+    /** A search for the rotors of MACHINE's configuration under which
+     *  CIPHER, made of letters of MACHINE's alphabet, is best decrypted,
+     *  keeping the TOP best. */
+    IocSearch(Machine machine, String cipher, int top) {
+        Alphabet alpha = machine.alphabet();
+        _size = alpha.size();
+        _machine = machine;
+        _top = top;
+        _cipher = new int[cipher.codePointCount(0, cipher.length())];
+        if (_cipher.length < 2) {
+            throw error("ciphertext is too short");
+        } else if (top <= 0) {
+            throw error("must keep at least one candidate");
+        }
+        for (int i = 0, k = 0; k < _cipher.length; k++) {
+            int c = cipher.codePointAt(i);
+            _cipher[k] = alpha.indexOf(c);
+            if (_cipher[k] < 0) {
+                throw error("letter does not exist in alphabet");
+            }
+            i += Character.charCount(c);
+        }
+    }
+
+    /** Return the best candidates among the rotor orders ORDERS (see
+     *  Bombe.orders), best first, searching on THREADS threads. */
+    List<Candidate> run(List<String[]> orders, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new Search(orders, 0, orders.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** A possible key without a plugboard, with its score. */
+    static class Candidate {
+
+        /** A candidate with rotors ROTORS, settings SETTINGS and ring
+         *  settings RINGS, as they would appear on a settings line,
+         *  whose decryption has index of coincidence IOC.  RANK orders
+         *  candidates with the same score. */
+        Candidate(String[] rotors, String settings, String rings,
+                  double ioc, long rank) {
+            _rotors = rotors;
+            _settings = settings;
+            _rings = rings;
+            _ioc = ioc;
+            _rank = rank;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, one letter for each slot after the
+         *  reflector. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my ring settings, one letter for each slot after the
+         *  reflector. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double ioc() {
+            return _ioc;
+        }
+
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _settings + " "
+                + _rings;
+        }
+
+        /** My rotors. */
+        private final String[] _rotors;
+
+        /** My settings and ring settings. */
+        private final String _settings, _rings;
+
+        /** My score. */
+        private final double _ioc;
+
+        /** My place in the order of the search. */
+        private final long _rank;
+    }
+
+    /** Orders candidates from worst to best: by score, and then, of
+     *  those with the same score, later in the search first. */
+    private static final Comparator<Candidate> WORST_FIRST =
+        Comparator.<Candidate>comparingDouble(c -> c._ioc)
+        .thenComparingLong(c -> -c._rank);
+
+    /** Return the best _top of CANDIDATES, best first. */
+    private List<Candidate> best(List<Candidate> candidates) {
+        candidates.sort(WORST_FIRST.reversed());
+        if (candidates.size() > _top) {
+            candidates.subList(_top, candidates.size()).clear();
+        }
+        return candidates;
+    }
+
+    /** Searches a range of rotor orders, or, for a single order, a
+     *  range of start positions. */
+    private class Search extends RecursiveTask<List<Candidate>> {
+
+        /** Search ORDERS[FIRST .. LAST - 1]. */
+        Search(List<String[]> orders, int first, int last) {
+            _orders = orders;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            List<Candidate> result = new ArrayList<>();
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                Search left = new Search(_orders, _first, mid);
+                left.fork();
+                result.addAll(new Search(_orders, mid, _last).compute());
+                result.addAll(left.join());
+            } else if (_first < _last) {
+                Order order = new Order(_orders.get(_first), _first);
+                List<Sweep> sweeps = new ArrayList<>();
+                for (long s = 0; s < order._starts; s += SWEEP) {
+                    sweeps.add(new Sweep(order, s,
+                                         Math.min(order._starts, s + SWEEP)));
+                }
+                invokeAll(sweeps);
+                for (Sweep sweep : sweeps) {
+                    result.addAll(sweep.join());
+                }
+            }
+            return best(result);
+        }
+
+        /** The orders searched. */
+        private final List<String[]> _orders;
+
+        /** Range of orders searched. */
+        private final int _first, _last;
+    }
+
+    /** The tables for one order of rotors. */
+    private class Order {
+
+        /** Tables for the rotors named NAMES, which are ORDERS[INDEX]
+         *  in the search. */
+        Order(String[] names, int index) {
+            _names = names;
+            _index = index;
+            int slots = names.length;
+            Rotor[] rotors = new Rotor[slots];
+            for (int k = 0; k < slots; k++) {
+                rotors[k] = _machine.rotors().get(names[k]);
+            }
+            Rotor right = rotors[slots - 1];
+            _fwd = new int[_size * _size];
+            _bwd = new int[_size * _size];
+            for (int k = 0; k < _size; k++) {
+                for (int c = 0; c < _size; c++) {
+                    _fwd[k * _size + c] = right.convertForward(c, k);
+                    _bwd[k * _size + c] = right.convertBackward(c, k);
+                }
+            }
+            _base = new int[2 * _size];
+            for (int c = 0; c < _base.length; c++) {
+                _base[c] = c % _size * _size;
+            }
+            int lefts = 1;
+            for (int k = 1; k < slots - 1; k++) {
+                lefts = Math.multiplyExact(lefts, _size);
+            }
+            _starts = (long) lefts * _size;
+            _inner = new int[Math.multiplyExact(lefts, _size)];
+            int[] posns = new int[slots];
+            for (int s = 0; s < lefts; s++) {
+                for (int k = slots - 2, rest = s; k >= 1; k--) {
+                    posns[k] = rest % _size;
+                    rest /= _size;
+                }
+                for (int c = 0; c < _size; c++) {
+                    int x = c;
+                    for (int k = slots - 2; k >= 1; k--) {
+                        x = rotors[k].convertForward(x, posns[k]);
+                    }
+                    x = rotors[0].convertForward(x, 0);
+                    for (int k = 1; k <= slots - 2; k++) {
+                        x = rotors[k].convertBackward(x, posns[k]);
+                    }
+                    _inner[s * _size + c] = x;
+                }
+            }
+        }
+
+        /** The names of my rotors. */
+        private final String[] _names;
+
+        /** My place among the orders searched. */
+        private final int _index;
+
+        /** _fwd[K * size + C] and _bwd[K * size + C] are the conversions
+         *  of C by the rightmost rotor, turned K positions from its 0
+         *  position, and by its inverse. */
+        private final int[] _fwd, _bwd;
+
+        /** _base[C] is C modulo the alphabet size, times that size. */
+        private final int[] _base;
+
+        /** _inner[S * size + C] is the conversion of C by the scrambler
+         *  left of the rightmost rotor when the rotors there have the
+         *  settings numbered S. */
+        private final int[] _inner;
+
+        /** Number of start positions of all the rotors. */
+        private final long _starts;
+    }
+
+    /** Scores every ring setting of the rightmost rotor, for a range of
+     *  start positions, under one rotor order. */
+    private class Sweep extends RecursiveTask<List<Candidate>> {
+
+        /** Sweep ORDER for the start positions numbered FIRST .. LAST -
+         *  1. */
+        Sweep(Order order, long first, long last) {
+            _order = order;
+            _first = first;
+            _last = last;
+            _left = new int[_cipher.length];
+            _right = new int[_cipher.length];
+            _counts = new int[_size];
+            _stepper = new Machine(_machine);
+            _stepper.insertRotors(order._names);
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            int slots = _order._names.length, n = _size;
+            int[] posns = new int[slots];
+            int[] fwd = _order._fwd, bwd = _order._bwd, base = _order._base;
+            int[] inner = _order._inner, cipher = _cipher;
+            long pairs = (long) cipher.length * (cipher.length - 1);
+            for (long s = _first; s < _last; s++) {
+                start(s, posns);
+                step(posns);
+                for (int g = 0; g < n; g++) {
+                    for (int i = 0; i < cipher.length; i++) {
+                        int k = base[_right[i] - g];
+                        int w = inner[_left[i] + fwd[k + cipher[i]]];
+                        _counts[bwd[k + w]] += 1;
+                    }
+                    long same = 0;
+                    for (int c = 0; c < n; c++) {
+                        same += (long) _counts[c] * (_counts[c] - 1);
+                        _counts[c] = 0;
+                    }
+                    offer((double) same / pairs, s, g);
+                }
+            }
+            return best(new ArrayList<>(_heap));
+        }
+
+        /** Set POSNS to start position S. */
+        private void start(long s, int[] posns) {
+            for (int k = posns.length - 1; k >= 1; k--) {
+                posns[k] = (int) (s % _size);
+                s /= _size;
+            }
+        }
+
+        /** Fill _left and _right with the table offsets for the settings
+         *  of the rotors left of the rightmost, and the settings of the
+         *  rightmost, at each letter of the ciphertext, the rotors
+         *  starting at POSNS. */
+        private void step(int[] posns) {
+            int last = posns.length - 1;
+            for (int i = 0; i < _cipher.length; i++) {
+                _stepper.whichRotates(posns);
+                int left = 0;
+                for (int k = 1; k < last; k++) {
+                    left = left * _size + posns[k];
+                }
+                _left[i] = left * _size;
+                _right[i] = posns[last] + _size;
+            }
+        }
+
+        /** Keep the candidate with start position S and the rightmost
+         *  ring setting G, scoring IOC, if it is among the best so
+         *  far. */
+        private void offer(double ioc, long s, int g) {
+            long rank = (_order._index * _order._starts + s) * _size + g;
+            Candidate worst = _heap.peek();
+            if (_heap.size() == _top && (ioc < worst._ioc
+                                         || ioc == worst._ioc
+                                         && rank > worst._rank)) {
+                return;
+            }
+            Alphabet alpha = _machine.alphabet();
+            int slots = _order._names.length;
+            int[] posns = new int[slots];
+            start(s, posns);
+            StringBuilder settings = new StringBuilder(),
+                rings = new StringBuilder();
+            for (int k = 1; k < slots; k++) {
+                settings.appendCodePoint(alpha.toCodePoint(posns[k]));
+                rings.appendCodePoint(alpha.toCodePoint(k < slots - 1 ? 0
+                                                        : g));
+            }
+            _heap.add(new Candidate(_order._names, settings.toString(),
+                                    rings.toString(), ioc, rank));
+            if (_heap.size() > _top) {
+                _heap.poll();
+            }
+        }
+
+        /** The order swept. */
+        private final Order _order;
+
+        /** Range of start positions swept. */
+        private final long _first, _last;
+
+        /** Offsets in the inner table, and settings of the rightmost
+         *  rotor plus the alphabet size, at each letter for the current
+         *  start position. */
+        private final int[] _left, _right;
+
+        /** Number of times each letter occurs in the current
+         *  decryption. */
+        private final int[] _counts;
+
+        /** Steps the rotors as my machine would. */
+        private final Machine _stepper;
+
+        /** The best candidates so far, worst first. */
+        private final PriorityQueue<Candidate> _heap =
+            new PriorityQueue<>(WORST_FIRST);
+    }
+
+    /** Number of start positions in each Sweep. */
+    private static final int SWEEP = 1 << 10;
+
+    /** The machine whose alphabet and rotors are used. */
+    private final Machine _machine;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of candidates kept. */
+    private final int _top;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IocSearch class.
+ *  @author Miranda Cheung
+ */
+public class IocSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A plaintext long enough for its letter frequencies to show. */
+    private static final String PLAIN =
+        "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDSANDTRADITIONS"
+        + "WITHTHEODORSOFTHEFORESTWITHTHEDEWANDDAMPOFMEADOWSWITHTHECURLING"
+        + "SMOKEOFWIGWAMSWITHTHERUSHINGOFGREATRIVERSWITHTHEIRFREQUENT"
+        + "REPETITIONSANDTHEIRWILDREVERBERATIONSASOFTHUNDERINTHEMOUNTAINS"
+        + "ISHOULDANSWERISHOULDTELLYOUFROMTHEFORESTSANDTHEPRAIRIES";
+
+    /** Return a machine with two moving rotors, I, II and III, and
+     *  reflector B. */
+    private static Machine smallMachine() {
+        RotorRegistry rotors = new RotorRegistry(UPPER);
+        rotors.add("B", 'R', "", NAVALA.get("B"));
+        rotors.add("I", 'M', "Q", NAVALA.get("I"));
+        rotors.add("II", 'M', "E", NAVALA.get("II"));
+        rotors.add("III", 'M', "V", NAVALA.get("III"));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /** Return PLAIN enciphered with MACHINE set by the settings line
+     *  LINE. */
+    private static String encipher(Machine machine, String line) {
+        new Settings(line, UPPER, 3, machine.rotors()).apply(machine);
+        return machine.convert(PLAIN);
+    }
+
+    @Test
+    public void testFindsRotors() {
+        Machine machine = smallMachine();
+        String cipher = encipher(machine, "* B III I KD AL");
+        IocSearch search = new IocSearch(machine, cipher, 3);
+        List<IocSearch.Candidate> best =
+            search.run(Bombe.orders(machine), 2);
+        assertEquals(3, best.size());
+        assertEquals("* B III I KD AL", best.get(0).toString());
+        assertTrue(best.get(0).ioc() > best.get(1).ioc());
+        assertTrue(best.get(1).ioc() >= best.get(2).ioc());
+    }
+
+    @Test
+    public void testIgnoresPlugboard() {
+        Machine machine = smallMachine();
+        String cipher = encipher(machine, "* B II III ZE AW (AB) (TX)");
+        IocSearch search = new IocSearch(machine, cipher, 1);
+        IocSearch.Candidate best =
+            search.run(Bombe.orders(machine), 1).get(0);
+        assertArrayEquals(new String[] { "B", "II", "III" },
+                          best.rotors());
+        assertEquals("ZE", best.settings());
+        assertEquals("AW", best.rings());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortCipher() {
+        new IocSearch(smallMachine(), "A", 1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testForeignLetter() {
+        new IocSearch(smallMachine(), "AB1", 1);
+    }
+}
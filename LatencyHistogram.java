@@ -0,0 +1,95 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A histogram of latencies, to which many threads may add at once
+ *  without locking.  Latencies are kept in microseconds, exactly below
+ *  EXACT microseconds and otherwise in buckets of about 3% of their
+ *  value (SUB buckets to each power of two), so percentiles are
+ *  reported to within that precision.
+ *  @author Miranda Cheung
+ */
+class LatencyHistogram {
+
+    /** Add a latency of NANOS nanoseconds. */
+    void record(long nanos) {
+        _counts.incrementAndGet(bucket(Math.max(0, nanos / NANOS_PER_US)));
+    }
+
+    /** Return the number of latencies added. */
+    long count() {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            total += _counts.get(b);
+        }
+        return total;
+    }
+
+    /** Return the latency, in microseconds, below which fraction P of
+     *  those added fall (0 if there are none), as the upper end of its
+     *  bucket. */
+    long percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = _counts.get(b);
+            total += counts[b];
+        }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank && seen > 0) {
+                return upper(b);
+            }
+        }
+        return 0;
+    }
+
+    /** Return a one-line summary of the 50th, 99th and 100th
+     *  percentiles. */
+    String summary() {
+        return String.format("%d requests, p50 %d us, p99 %d us, max %d us",
+                             count(), percentile(P50), percentile(P99),
+                             percentile(1));
+    }
+
+    /** Return the bucket holding MICROS microseconds. */
+    private static int bucket(long micros) {
+        if (micros < EXACT) {
+            return (int) micros;
+        }
+        int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+        return Math.min(BUCKETS - 1,
+                        EXACT + (exp - EXACT_BITS) * SUB + sub);
+    }
+
+    /** Return the largest latency in bucket B, in microseconds. */
+    private static long upper(int b) {
+        if (b < EXACT) {
+            return b;
+        }
+        int exp = (b - EXACT) / SUB + EXACT_BITS, sub = (b - EXACT) % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /** The percentiles reported by summary. */
+    private static final double P50 = 0.5, P99 = 0.99;
+
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_US = 1000;
+
+    /** Latencies below 1 << EXACT_BITS microseconds are kept exactly. */
+    private static final int EXACT_BITS = 6, EXACT = 1 << EXACT_BITS;
+
+    /** Each power of two above EXACT is split into 1 << SUB_BITS
+     *  buckets. */
+    private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS;
+
+    /** Number of buckets, enough for latencies of over a day. */
+    private static final int BUCKETS = EXACT + (Long.SIZE - 27) * SUB;
+
+    /** Number of latencies in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+}
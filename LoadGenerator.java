@@ -0,0 +1,166 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A load generator for EnigmaServer.  It opens a number of
+ *  connections at once, waits until all are open, and then sends a
+ *  number of requests on each, one after another, timing each from
+ *  just before it is sent until its reply has arrived.  Finally it
+ *  prints the throughput and the 50th and 99th percentile latencies.
+ *  @author Miranda Cheung
+ */
+public final class LoadGenerator {
+
+    /** Run a load test as given by ARGS: ADDRESS CONNECTIONS REQUESTS
+     *  [SETTINGS [MESSAGE]], where ADDRESS is as for EnigmaServer.address
+     *  and SETTINGS and MESSAGE make up each request (by default a
+     *  settings line for the naval rotors and a short message). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 5) {
+                throw error("usage: ADDRESS CONNECTIONS REQUESTS "
+                            + "[SETTINGS [MESSAGE]]");
+            }
+            LoadGenerator load = new LoadGenerator(
+                EnigmaServer.address(args[0]),
+                args.length > 3 ? args[3] : SETTINGS,
+                args.length > 4 ? args[4] : MESSAGE);
+            load.run(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            System.out.println(load.report());
+            return;
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A load generator sending requests made of SETTING and MESSAGE to
+     *  ADDRESS. */
+    LoadGenerator(SocketAddress address, String setting, String message) {
+        _address = address;
+        _setting = setting;
+        _message = message;
+    }
+
+    /** Open CONNECTIONS connections and send REQUESTS requests on
+     *  each.  The run is timed from when every connection is open (or
+     *  refused). */
+    void run(int connections, int requests) {
+        CountDownLatch open = new CountDownLatch(connections);
+        CountDownLatch done = new CountDownLatch(connections);
+        ExecutorService clients = EnigmaServer.threadPerTask();
+        for (int c = 0; c < connections; c++) {
+            clients.execute(() -> {
+                try {
+                    client(open, requests);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            open.await();
+            _start = System.nanoTime();
+            done.await();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            clients.shutdownNow();
+        }
+        _elapsed = System.nanoTime() - _start;
+    }
+
+    /** Return a report of the last run. */
+    String report() {
+        double rate =
+            _elapsed > 0 ? _latencies.count() / (_elapsed / 1e9) : 0;
+        return String.format("%d failed, %d refused, %.1f requests/s, %s",
+                             _failed.get(), _refused.get(), rate,
+                             _latencies.summary());
+    }
+
+    /** Return the number of requests that failed or were cut short. */
+    long failed() {
+        return _failed.get();
+    }
+
+    /** Return the number of connections refused. */
+    long refused() {
+        return _refused.get();
+    }
+
+    /** Return the latencies of the requests answered. */
+    LatencyHistogram latencies() {
+        return _latencies;
+    }
+
+    /** Connect, count down OPEN and wait for every other connection to
+     *  be open, and send REQUESTS requests. */
+    private void client(CountDownLatch open, int requests) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(_address);
+        } catch (IOException excp) {
+            _refused.incrementAndGet();
+            open.countDown();
+            return;
+        }
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            open.countDown();
+            open.await();
+            for (int r = 0; r < requests; r++) {
+                long start = System.nanoTime();
+                EnigmaServer.writeFrame(out, _setting);
+                EnigmaServer.writeFrame(out, _message);
+                out.flush();
+                int status = in.readUnsignedByte();
+                EnigmaServer.readFrame(in, false);
+                _latencies.record(System.nanoTime() - start);
+                if (status != EnigmaServer.OK) {
+                    _failed.incrementAndGet();
+                }
+            }
+        } catch (IOException | InterruptedException excp) {
+            _failed.incrementAndGet();
+        }
+    }
+
+    /** Default settings line. */
+    private static final String SETTINGS = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Default message. */
+    private static final String MESSAGE =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+
+    /** Where requests go. */
+    private final SocketAddress _address;
+
+    /** The settings line and message of each request. */
+    private final String _setting, _message;
+
+    /** Client-side latencies. */
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+
+    /** Numbers of failed requests and refused connections. */
+    private final AtomicLong _failed = new AtomicLong(),
+        _refused = new AtomicLong();
+
+    /** Start and length of the last run, in nanoseconds. */
+    private long _start, _elapsed;
+}
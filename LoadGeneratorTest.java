@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.function.Function;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LoadGenerator class.
+ *  @author Miranda Cheung
+ */
+public class LoadGeneratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Parses settings lines for 5-slot machines with the naval
+     *  rotors. */
+    private static final Function<String, Settings> PARSE = line -> {
+        RotorRegistry rotors = new RotorRegistry(UPPER);
+        for (String name : NAVALA.keySet()) {
+            rotors.add(name, 'N', "", "");
+        }
+        return new Settings(line, UPPER, 5, rotors);
+    };
+
+    /** Start a thread serving with SERVER, keeping any error in
+     *  _error. */
+    private Thread serve(EnigmaServer server) {
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                _error = excp;
+            }
+        });
+        serving.start();
+        return serving;
+    }
+
+    /** Run LOAD, with CONNECTIONS connections of REQUESTS requests
+     *  each, against SERVER, then stop SERVER.  Return LOAD. */
+    private LoadGenerator run(EnigmaServer server, LoadGenerator load,
+                              int connections, int requests)
+        throws Exception {
+        Thread serving = serve(server);
+        load.run(connections, requests);
+        server.close();
+        serving.join();
+        if (_error != null) {
+            throw _error;
+        }
+        return load;
+    }
+
+    /** Return a server for the naval rotors listening on a free
+     *  loopback port, and set _address to its address. */
+    private EnigmaServer server() throws IOException {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        EnigmaServer server = new EnigmaServer(m, PARSE);
+        ServerSocketChannel listener = server.bind(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0));
+        _address = listener.getLocalAddress();
+        return server;
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        EnigmaServer server = server();
+        LoadGenerator load = run(server, new LoadGenerator(
+            _address, "* B Beta III IV I AXLE (YF) (ZH)", "HELLO WORLD"),
+                                 2, 2);
+        assertEquals(0, load.failed());
+        assertEquals(0, load.refused());
+        assertEquals(4, load.latencies().count());
+        assertEquals(4, server.latencies().count());
+        assertTrue(load.report().startsWith("0 failed, 0 refused, "));
+    }
+
+    @Test
+    public void testBadSettings() throws Exception {
+        EnigmaServer server = server();
+        LoadGenerator load =
+            run(server, new LoadGenerator(_address, "* B Beta", "HELLO"),
+                2, 2);
+        assertEquals(4, load.failed());
+        assertEquals(4, load.latencies().count());
+    }
+
+    /** The address of the server from server(). */
+    private SocketAddress _address;
+
+    /** An error from the serving thread, or null. */
+    private volatile IOException _error;
+}
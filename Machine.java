@@ -1,8 +1,10 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -16,21 +18,63 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, registry(alpha, allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls.  ROTORS holds all the available
+     *  rotors. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorRegistry rotors) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
+        _allRotors = rotors;
         if (_numRotors <= 1) {
             throw error("numRotors must be more than 1");
         } else if (_pawls < 0) {
             throw error("pawls cannot be a negative value");
         } else if (_pawls >= _numRotors) {
             throw error("pawls must be less than numRotors");
-        } else if (_allRotors.isEmpty()) {
+        } else if (_allRotors.size() == 0) {
             throw error("allRotors cannot be empty");
         }
     }
 
+    /** Return a registry of ALLROTORS, with alphabet ALPHA. */
+    private static RotorRegistry registry(Alphabet alpha,
+                                          Collection<Rotor> allRotors) {
+        RotorRegistry result = new RotorRegistry(alpha);
+        for (Rotor r : allRotors) {
+            result.add(r);
+        }
+        return result;
+    }
+
+    /** A new Enigma machine with the same alphabet, available rotors,
+     *  rotors in its slots, ring settings, rotor settings and plugboard
+     *  as MACHINE.  The rotors, plugboard and tables derived from them
+     *  are shared rather than copied.  A Machine never modifies them
+     *  (it keeps all settings in its own arrays and uses only a rotor's
+     *  wiring and notches), so one configuration read from a file can
+     *  drive any number of copies in different threads without
+     *  locking.  Only the settings belong to the new machine. */
+    Machine(Machine machine) {
+        _alphabet = machine._alphabet;
+        _numRotors = machine._numRotors;
+        _pawls = machine._pawls;
+        _allRotors = machine._allRotors;
+        _plugboard = machine._plugboard;
+        if (machine._usedRotors != null) {
+            _usedRotors = machine._usedRotors;
+            _rotates = machine._rotates;
+            _notches = machine._notches.clone();
+            _settings = machine._settings.clone();
+            _origin = machine._origin.clone();
+            _rings = machine._rings.clone();
+            _count = machine._count;
+        }
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -45,17 +89,22 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        if (rotors.length != numRotors()) {
+            throw error("must have numRotors() number of rotors");
+        }
+        if (holds(rotors)) {
+            Arrays.fill(_settings, 0);
+            Arrays.fill(_origin, 0);
+            Arrays.fill(_rings, 0);
+            _count = 0;
+            return;
+        }
         _usedRotors = new Rotor[numRotors()];
-        int i = 0; int movingR = 0;
-        for (String name: rotors) {
-            for (Rotor r: _allRotors) {
-                if (r.name().equals(name)) {
-                    _usedRotors[i] = r;
-                    i++;
-                    if (r.rotates()) {
-                        movingR++;
-                    }
-                }
+        int movingR = 0;
+        for (int i = 0; i < rotors.length; i++) {
+            _usedRotors[i] = _allRotors.get(rotors[i]);
+            if (_usedRotors[i].rotates()) {
+                movingR++;
             }
         }
         if (!_usedRotors[0].reflecting()) {
@@ -69,36 +118,54 @@ class Machine {
         if (movingR != _pawls) {
             throw error("no. of pawls != no. of moving rotors");
         }
+        _settings = new int[numRotors()];
+        _origin = new int[numRotors()];
+        _count = 0;
+        _notchesBefore = null;
+        _rings = new int[numRotors()];
+        _rotates = new boolean[numRotors()];
+        _notches = new boolean[numRotors()][];
+        for (int k = 0; k < numRotors(); k++) {
+            _rotates[k] = _usedRotors[k].rotates();
+            _notches[k] = _usedRotors[k].notches();
+        }
+    }
+
+    /** Return true iff my slots already hold the rotors named ROTORS. */
+    private boolean holds(String[] rotors) {
+        if (_usedRotors == null) {
+            return false;
+        }
+        for (int k = 0; k < rotors.length; k++) {
+            if (!_usedRotors[k].name().equals(rotors[k])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        while (setting.substring(0, 1).equals(" ")) {
-            setting = setting.substring(1);
+        int start = 0;
+        while (start < setting.length() && setting.charAt(start) == ' ') {
+            start++;
         }
-        int slen = setting.replaceAll(" ", "").length(), rlen = numRotors() - 1;
+        setting = setting.substring(start);
+        String letters = setting.replace(" ", "");
+        int slen = letters.codePointCount(0, letters.length());
+        int rlen = numRotors() - 1;
         if (slen != rlen && slen != rlen * 2) {
             throw new EnigmaException("no. of settings not match numRotors()");
         }
-        String s = setting.substring(0, rlen);
-        for (int i = 0; i < s.length(); i++) {
-            String test = s.substring(i, i + 1);
-            boolean found = false;
-            for (int k = 0; k < _alphabet.size(); k++) {
-                if (test.equals("" + _alphabet.toChar(k))) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                throw error("setting letter not in alphabet");
-            }
-            _usedRotors[i + 1].set(s.charAt(i));
-        }
-        setting = setting.substring(rlen).replaceAll(" ", "");
-        slen = setting.length();
+        int split = setting.offsetByCodePoints(0, rlen);
+        int[] posns = toIndices(setting.substring(0, split));
+        System.arraycopy(posns, 0, _settings, 1, posns.length);
+        System.arraycopy(posns, 0, _origin, 1, posns.length);
+        _count = 0;
+        setting = setting.substring(split).replace(" ", "");
+        slen = setting.codePointCount(0, setting.length());
         if (slen == rlen) {
             setRingstellung(setting);
         } else if (slen != 0) {
@@ -110,22 +177,39 @@ class Machine {
      * @param setting contains the ringstellung settings.
      */
     public void setRingstellung(String setting) {
-        for (int i = 0; i < setting.length(); i++) {
-            String test = setting.substring(i, i + 1);
-            boolean found = false;
-            for (int k = 0; k < _alphabet.size(); k++) {
-                if (test.equals("" + _alphabet.toChar(k))) {
-                    found = true;
-                    break;
-                }
+        int[] rings = toIndices(setting);
+        System.arraycopy(rings, 0, _rings, 1, rings.length);
+    }
+
+    /** Set the settings of my rotors to POSNS and their ring settings to
+     *  RINGS, both alphabet indices indexed by slot, as if by setRotors
+     *  and setRingstellung.  Entry 0, for the reflector, is ignored. */
+    void setSettings(int[] posns, int[] rings) {
+        int size = _alphabet.size();
+        for (int k = 1; k < numRotors(); k++) {
+            if (posns[k] < 0 || posns[k] >= size
+                || rings[k] < 0 || rings[k] >= size) {
+                throw error("setting not in alphabet");
             }
-            if (!found) {
+        }
+        System.arraycopy(posns, 1, _settings, 1, numRotors() - 1);
+        System.arraycopy(posns, 1, _origin, 1, numRotors() - 1);
+        System.arraycopy(rings, 1, _rings, 1, numRotors() - 1);
+        _count = 0;
+    }
+
+    /** Returns the alphabet indices of the characters of LETTERS. */
+    private int[] toIndices(String letters) {
+        int[] result = new int[letters.codePointCount(0, letters.length())];
+        for (int i = 0, k = 0; k < result.length; k++) {
+            int c = letters.codePointAt(i);
+            result[k] = _alphabet.indexOf(c);
+            if (result[k] < 0) {
                 throw error("setting letter not in alphabet");
             }
-            char toBe0th = setting.charAt(i);
-            Rotor r = _usedRotors[i + 1];
-            r.setNew0(_alphabet.toInt(toBe0th));
+            i += Character.charCount(c);
         }
+        return result;
     }
 
     /** Set the plugboard to PLUGBOARD. */
@@ -133,19 +217,200 @@ class Machine {
         _plugboard = plugboard;
     }
 
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the rotors I may be given. */
+    RotorRegistry rotors() {
+        return _allRotors;
+    }
+
+    /** Return the rotor in slot K (0 is the reflector). */
+    Rotor rotor(int k) {
+        return _usedRotors[k];
+    }
+
+    /** Return the ring setting of the rotor in slot K. */
+    int ring(int k) {
+        return _rings[k];
+    }
+
+    /** Return a copy of the current settings of my rotors, indexed by
+     *  slot. */
+    int[] settings() {
+        return _settings.clone();
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        whichRotates();
+        whichRotates(_settings);
+        _count += 1;
+        return scramble(c, _settings);
+    }
+
+    /** Advance my rotors exactly as converting N more characters would,
+     *  in time that depends on the number of rotors but not on N. */
+    void seek(long n) {
+        if (n < 0) {
+            throw error("cannot seek backwards");
+        }
+        seek(_settings, n);
+        _count += n;
+    }
+
+    /** Return my rotors to their settings of N characters ago, going no
+     *  further back than the last call to setRotors. */
+    void retreat(long n) {
+        if (n < 0 || n > _count) {
+            throw error("cannot retreat past the initial settings");
+        }
+        _count -= n;
+        System.arraycopy(_origin, 0, _settings, 0, _settings.length);
+        seek(_settings, _count);
+    }
+
+    /** Return the number of characters converted (or sought past) since
+     *  my rotors were last set. */
+    long position() {
+        return _count;
+    }
+
+    /** Advance the rotor settings in POSNS as N calls to whichRotates
+     *  would.  The rightmost rotor moves every time.  Each other moving
+     *  rotor moves once for each notch the rotor to its right passes,
+     *  plus, unless it is the leftmost moving rotor, once more for each
+     *  of its own notches (the double step), which it leaves on the step
+     *  after arriving there.  Once a first step has been taken, kicks
+     *  from the right never coincide with double steps, provided no
+     *  rotor whose notches matter has two adjacent notches, so the
+     *  number of moves of every rotor can be counted directly from the
+     *  rotor to its right.  Otherwise, this steps N times. */
+    void seek(int[] posns, long n) {
+        if (n == 0 || _pawls == 0) {
+            return;
+        }
+        whichRotates(posns);
+        n -= 1;
+        if (!seekable()) {
+            for (; n > 0; n -= 1) {
+                whichRotates(posns);
+            }
+            return;
+        }
+        int size = _alphabet.size();
+        long[] moves = new long[numRotors()];
+        for (int k = numRotors() - _pawls; k < numRotors(); k++) {
+            moves[k] = moves(k, n, posns);
+        }
+        for (int k = numRotors() - _pawls; k < numRotors(); k++) {
+            posns[k] = (int) ((posns[k] + moves[k] % size) % size);
+        }
+    }
+
+    /** Return the number of times the moving rotor in slot K moves in
+     *  the next T steps after the rotor settings are POSNS, assuming that
+     *  seekable() and that POSNS was reached by at least one step. */
+    private long moves(int k, long t, int[] posns) {
+        int last = numRotors() - 1, size = _alphabet.size();
+        if (t <= 0) {
+            return 0;
+        } else if (k == last) {
+            return t;
+        }
+        long right = moves(k + 1, t - 1, posns);
+        long kicks = countNotches(k + 1, posns[k + 1], right + 1);
+        if (k == numRotors() - _pawls) {
+            return kicks;
+        }
+        long span = kicks == 0 ? 0 : openSpan(k, posns[k], kicks);
+        boolean landed = _notches[k][(int) ((posns[k] + span) % size)];
+        boolean pending = kicks > 0
+            && _notches[k + 1][(int) ((posns[k + 1] + right) % size)];
+        return landed && !pending ? span + 1 : span;
+    }
+
+    /** Return the number of notches of the rotor in slot K among the LEN
+     *  settings starting at P and counting upwards, with wraparound. */
+    private long countNotches(int k, int p, long len) {
+        int size = _alphabet.size();
+        int[] before = _notchesBefore[k];
+        int r = (int) (len % size);
+        return (len / size) * before[size] + before[p + r] - before[p];
+    }
+
+    /** Return the smallest L such that the L settings of the rotor in
+     *  slot K starting at P include COUNT > 0 settings that are not
+     *  notches. */
+    private long openSpan(int k, int p, long count) {
+        int size = _alphabet.size();
+        int[] before = _notchesBefore[k];
+        int open = size - before[size];
+        long laps = (count - 1) / open;
+        int r = (int) (count - laps * open);
+        int setting = _openSettings[k][p - before[p] + r - 1];
+        return laps * size + setting - p + 1;
+    }
+
+    /** Return true iff seek can count rotor moves directly: no rotor
+     *  whose notches affect stepping has two adjacent notches.  Builds
+     *  the tables used for counting on first use, publishing them only
+     *  once complete.  Threads that share this machine (as the pieces of
+     *  convertParallel do) must not make the first call concurrently, so
+     *  convertParallel makes it before dividing the work. */
+    private boolean seekable() {
+        if (_notchesBefore != null) {
+            return _seekable;
+        }
+        int size = _alphabet.size(), first = numRotors() - _pawls;
+        int[][] notchesBefore = new int[numRotors()][];
+        int[][] openSettings = new int[numRotors()][];
+        boolean seekable = true;
+        for (int k = first; k < numRotors(); k++) {
+            boolean[] notches = _notches[k];
+            if (notches == null) {
+                notches = new boolean[size];
+            }
+            int[] before = new int[2 * size + 1];
+            int[] open = new int[2 * size];
+            int numOpen = 0;
+            for (int i = 0; i < 2 * size; i++) {
+                boolean notch = notches[i % size];
+                before[i + 1] = before[i] + (notch ? 1 : 0);
+                if (!notch) {
+                    open[numOpen++] = i;
+                }
+                if (k > first && notch && notches[(i + 1) % size]) {
+                    seekable = false;
+                }
+            }
+            notchesBefore[k] = before;
+            openSettings[k] = open;
+        }
+        _openSettings = openSettings;
+        _seekable = seekable;
+        _notchesBefore = notchesBefore;
+        return seekable;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) when the rotor settings
+     *  are POSNS, without advancing any rotors. */
+    int scramble(int c, int[] posns) {
         int res = _plugboard.permute(c);
         for (int i = numRotors() - 1; i >= 0; i--) {
-            Rotor r = _usedRotors[i];
-            res = r.convertForward(res);
+            res = _usedRotors[i].convertForward(res, posns[i] - _rings[i]);
         }
         for (int i = 1; i < numRotors(); i++) {
-            Rotor r = _usedRotors[i];
-            res = _usedRotors[i].convertBackward(res);
+            res = _usedRotors[i].convertBackward(res, posns[i] - _rings[i]);
         }
         return _plugboard.permute(res);
     }
@@ -153,48 +418,248 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String res = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int valInAlpha = _alphabet.toInt(msg.charAt(i));
-            int numericVal = convert(valInAlpha);
-            res += _alphabet.toChar(numericVal);
+        char[] in = msg.toCharArray();
+        char[] out = _alphabet.isBmp() ? in : new char[2 * in.length];
+        int len = convert(in, 0, in.length, out, 0);
+        return new String(out, 0, len);
+    }
+
+    /** Replace the LEN alphabet indices starting at MSG[OFF] with their
+     *  encodings/decodings, updating the state of the rotors
+     *  accordingly. */
+    void convert(int[] msg, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            msg[i] = convert(msg[i]);
         }
-        return res;
     }
 
-    /** Common alphabet of my rotors. */
-    private final Alphabet _alphabet;
+    /** Encode/decode the LEN chars starting at IN[OFF] into OUT starting
+     *  at OUT[OUTOFF], updating the state of the rotors accordingly, and
+     *  return the number of chars written.  Characters outside the Basic
+     *  Multilingual Plane occupy two chars.  IN and OUT may be the same
+     *  array (with OFF == OUTOFF) when my alphabet isBmp(). */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int j = outOff;
+        for (int i = off, end = off + len; i < end; ) {
+            int c = in[i++];
+            if (Character.isHighSurrogate((char) c) && i < end
+                && Character.isLowSurrogate(in[i])) {
+                c = Character.toCodePoint((char) c, in[i++]);
+            }
+            int cp = _alphabet.toCodePoint(convert(index(c)));
+            if (cp <= Character.MAX_VALUE) {
+                out[j++] = (char) cp;
+            } else {
+                j += Character.toChars(cp, out, j);
+            }
+        }
+        return j - outOff;
+    }
+
+    /** Replace the LEN alphabet indices starting at MSG[OFF] with their
+     *  encodings/decodings, exactly as convert(MSG, OFF, LEN) would, but
+     *  dividing the work among the threads of the common fork-join pool.
+     *  Each piece starts from rotor settings found by seek. */
+    void convertParallel(int[] msg, int off, int len) {
+        seekable();
+        ForkJoinPool.commonPool().invoke(
+            new Piece(msg, off, len, null, 0, _settings.clone(), off));
+        seek(_settings, len);
+        _count += len;
+    }
+
+    /** Encode/decode the LEN chars starting at IN[OFF] into OUT starting
+     *  at OUT[OUTOFF], exactly as convert(IN, OFF, LEN, OUT, OUTOFF)
+     *  would, but in parallel as for convertParallel(int[], int, int).
+     *  Returns the number of chars written. */
+    int convertParallel(char[] in, int off, int len, char[] out,
+                        int outOff) {
+        if (!_alphabet.isBmp()) {
+            return convert(in, off, len, out, outOff);
+        }
+        seekable();
+        ForkJoinPool.commonPool().invoke(
+            new Piece(in, off, len, out, outOff - off, _settings.clone(),
+                      off));
+        seek(_settings, len);
+        _count += len;
+        return len;
+    }
+
+    /** A range of a message being converted by convertParallel. */
+    private class Piece extends RecursiveAction {
+
+        /** A task converting the LEN items starting at MSG[OFF], which
+         *  is an int[] of indices or a char[] to be written into OUT at
+         *  the same position plus SHIFT.  The message starts at index
+         *  START, with rotor settings ORIGIN. */
+        Piece(Object msg, int off, int len, char[] out, int shift,
+              int[] origin, int start) {
+            _msg = msg;
+            _off = off;
+            _len = len;
+            _out = out;
+            _shift = shift;
+            _start = start;
+            _posns = origin;
+        }
+
+        @Override
+        protected void compute() {
+            if (_len > PIECE_SIZE) {
+                int half = _len / 2;
+                invokeAll(new Piece(_msg, _off, half, _out, _shift,
+                                    _posns, _start),
+                          new Piece(_msg, _off + half, _len - half, _out,
+                                    _shift, _posns, _start));
+                return;
+            }
+            int[] posns = _posns.clone();
+            seek(posns, _off - _start);
+            if (_msg instanceof int[]) {
+                int[] msg = (int[]) _msg;
+                for (int i = _off; i < _off + _len; i++) {
+                    whichRotates(posns);
+                    msg[i] = scramble(msg[i], posns);
+                }
+            } else {
+                char[] msg = (char[]) _msg;
+                for (int i = _off; i < _off + _len; i++) {
+                    whichRotates(posns);
+                    int c = scramble(index(msg[i]), posns);
+                    _out[i + _shift] = _alphabet.toChar(c);
+                }
+            }
+        }
+
+        /** The message, an int[] or a char[]. */
+        private final Object _msg;
+
+        /** The range of _msg to convert. */
+        private final int _off, _len;
+
+        /** Where converted chars go, or null for an int[] message. */
+        private final char[] _out;
+
+        /** Offset from an index in _msg to the same index in _out. */
+        private final int _shift;
+
+        /** Index of the start of the whole message. */
+        private final int _start;
 
-    /** Rotates rotors in need of rotating. */
-    private void whichRotates() {
-        ArrayList<Rotor> toAdvance = new ArrayList<>();
-        for (int i = numRotors() - 1; i > 0; i--) {
-            if (_usedRotors[i].atNotch()) {
-                if (_usedRotors[i - 1].rotates()) {
-                    toAdvance.add(_usedRotors[i - 1]);
-                    if (!toAdvance.contains(_usedRotors[i])) {
-                        toAdvance.add(_usedRotors[i]);
-                    }
+        /** The rotor settings at the start of the whole message. */
+        private final int[] _posns;
+    }
+
+    /** Encode/decode the chars remaining in IN into OUT, updating the
+     *  state of the rotors accordingly.  Stops when IN is exhausted or
+     *  OUT has no room for the next character; a surrogate pair split
+     *  across the end of IN is left there for the next call.  The
+     *  positions of both buffers are advanced past the chars consumed
+     *  and produced. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int room = _alphabet.isBmp() ? 1 : 2;
+        while (in.hasRemaining() && out.remaining() >= room) {
+            int c = in.get();
+            if (Character.isHighSurrogate((char) c)) {
+                if (!in.hasRemaining()) {
+                    in.position(in.position() - 1);
+                    return;
                 }
+                if (Character.isLowSurrogate(in.get(in.position()))) {
+                    c = Character.toCodePoint((char) c, in.get());
+                }
+            }
+            int cp = _alphabet.toCodePoint(convert(index(c)));
+            if (cp <= Character.MAX_VALUE) {
+                out.put((char) cp);
+            } else {
+                out.put(Character.highSurrogate(cp));
+                out.put(Character.lowSurrogate(cp));
             }
         }
-        if (!toAdvance.contains(_usedRotors[numRotors() - 1])) {
-            toAdvance.add(_usedRotors[numRotors() - 1]);
+    }
+
+    /** Returns the index in my alphabet of code point C. */
+    private int index(int c) {
+        int k = _alphabet.indexOf(c);
+        if (k < 0) {
+            throw error("letter does not exist in alphabet");
         }
-        for (Rotor r: toAdvance) {
-            r.advance();
+        return k;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Rotates rotors in need of rotating, where POSNS holds the
+     *  setting of each rotor.  A rotor advances if it is the rightmost,
+     *  if the rotor to its right is at a notch, or if it is itself at a
+     *  notch and the rotor to its left can move.  Deciding from left to
+     *  right means every test sees settings from before this step. */
+    void whichRotates(int[] posns) {
+        int last = numRotors() - 1, size = _alphabet.size();
+        boolean here = atNotch(1, posns);
+        for (int i = 1; i <= last; i++) {
+            boolean right = i < last && atNotch(i + 1, posns);
+            if (_rotates[i]
+                && (i == last || right || (here && _rotates[i - 1]))) {
+                posns[i] = posns[i] + 1 == size ? 0 : posns[i] + 1;
+            }
+            here = right;
         }
     }
 
+    /** Returns true iff the rotor in slot K is at a notch when the rotor
+     *  settings are POSNS. */
+    private boolean atNotch(int k, int[] posns) {
+        return _notches[k] != null && _notches[k][posns[k]];
+    }
+
     /** Number of rotors and pawls for this machine. */
-    private int _numRotors, _pawls;
+    private final int _numRotors, _pawls;
 
     /** Total rotors potentially used in this machine. */
-    private Collection<Rotor> _allRotors = new HashSet<>();
+    private final RotorRegistry _allRotors;
 
     /** Rotors used in this machine. */
     private Rotor[] _usedRotors;
 
     /** Plugboard of this machine. */
     private Permutation _plugboard;
+
+    /** The current setting of the rotor in each slot. */
+    private int[] _settings;
+
+    /** Number of characters below which convertParallel does not
+     *  divide a message further. */
+    private static final int PIECE_SIZE = 1 << 15;
+
+    /** The settings of my rotors when they were last set. */
+    private int[] _origin;
+
+    /** The number of characters converted since my rotors were set. */
+    private long _count;
+
+    /** For each moving slot K, _notchesBefore[K][I] is the number of
+     *  notches among settings 0 .. I-1 of its rotor, counting settings
+     *  modulo the alphabet size, for 0 <= I <= 2 * size.  Null until
+     *  seek first needs it. */
+    private int[][] _notchesBefore;
+
+    /** For each moving slot, the settings in 0 .. 2 * size - 1 that are
+     *  not (modulo size) notches of its rotor, in increasing order. */
+    private int[][] _openSettings;
+
+    /** True iff seek can count rotor moves directly. */
+    private boolean _seekable;
+
+    /** The ring setting (ringstellung) of the rotor in each slot. */
+    private int[] _rings;
+
+    /** True for the slots holding rotors that can move. */
+    private boolean[] _rotates;
+
+    /** The notch table of the rotor in each slot (null if none). */
+    private boolean[][] _notches;
 }
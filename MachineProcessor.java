@@ -0,0 +1,257 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/** A Flow.Processor that converts a stream of chunks of text with a
+ *  Machine.  Each chunk received is converted and published as one
+ *  chunk, with the machine's state carried from each chunk to the next,
+ *  so the chunks published are together what converting the
+ *  concatenation of those received would give.  A surrogate pair split
+ *  between two chunks is converted with the second.  A chunk beginning
+ *  with '*' (which no alphabet contains) is not converted, but taken as
+ *  a settings line, as in an input file, and applied to the machine;
+ *  nothing is published for it.
+ *
+ *  Demand is passed upstream as it arrives, and each chunk received
+ *  yields at most one chunk published, so I never publish more than my
+ *  subscriber has requested and hold nothing but a pending surrogate.
+ *  For each chunk that yields nothing, one more is requested upstream.
+ *  A surrogate still pending when the stream completes is published on
+ *  its own, once there is demand for it, before onComplete.
+ *  I accept one subscriber.  A conversion or settings error cancels the
+ *  upstream subscription and is passed downstream as onError.
+ *  @author Miranda Cheung
+ */
+class MachineProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** A processor converting with MACHINE, whose rotors and plugboard
+     *  must be set unless the first chunk is a settings line. */
+    MachineProcessor(Machine machine) {
+        _machine = machine;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_subscriber == null) {
+                _subscriber = subscriber;
+                subscriber.onSubscribe(new Downstream());
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(
+            "already subscribed"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long pending;
+        synchronized (this) {
+            if (_upstream != null || _cancelled) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            pending = _pending;
+            _pending = 0;
+        }
+        if (pending > 0) {
+            subscription.request(pending);
+        }
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        if (_done) {
+            return;
+        }
+        CharBuffer result;
+        try {
+            result = convert(chunk);
+        } catch (EnigmaException excp) {
+            _upstream.cancel();
+            onError(excp);
+            return;
+        }
+        if (result == null) {
+            _upstream.request(1);
+        } else {
+            synchronized (this) {
+                _demand -= 1;
+            }
+            _subscriber.onNext(result);
+        }
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        if (!_done) {
+            _done = true;
+            _subscriber.onError(excp);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (_done) {
+            return;
+        }
+        CharBuffer last;
+        try {
+            last = flushCarry();
+        } catch (EnigmaException excp) {
+            onError(excp);
+            return;
+        }
+        if (last != null) {
+            synchronized (this) {
+                if (_demand == 0) {
+                    _last = last;
+                    return;
+                }
+                _demand -= 1;
+            }
+        }
+        finish(last);
+    }
+
+    /** Publish LAST, unless it is null, and complete. */
+    private void finish(CharBuffer last) {
+        if (last != null) {
+            _subscriber.onNext(last);
+        }
+        _done = true;
+        _subscriber.onComplete();
+    }
+
+    /** Return the conversion of the rest of CHUNK, or null if there is
+     *  nothing to publish for it.  If CHUNK is a settings line, apply it
+     *  instead, first converting any pending surrogate on its own. */
+    private CharBuffer convert(CharBuffer chunk) {
+        if (chunk.hasRemaining() && chunk.get(chunk.position()) == '*') {
+            Settings settings =
+                new Settings(chunk.toString().trim(), _machine.alphabet(),
+                             _machine.numRotors(), _machine.rotors());
+            CharBuffer last = flushCarry();
+            settings.apply(_machine);
+            return last;
+        }
+        int len = chunk.remaining() + (_carry != 0 ? 1 : 0);
+        if (len == 0) {
+            return null;
+        }
+        char[] in = new char[len];
+        if (_carry != 0) {
+            in[0] = _carry;
+            _carry = 0;
+        }
+        chunk.get(in, len - chunk.remaining(), chunk.remaining());
+        if (Character.isHighSurrogate(in[len - 1])) {
+            _carry = in[len - 1];
+            len -= 1;
+            if (len == 0) {
+                return null;
+            }
+        }
+        char[] out = _machine.alphabet().isBmp() ? in : new char[2 * len];
+        int n = _machine.convert(in, 0, len, out, 0);
+        return CharBuffer.wrap(out, 0, n);
+    }
+
+    /** Return the conversion of the pending high surrogate, or null if
+     *  there is none. */
+    private CharBuffer flushCarry() {
+        if (_carry == 0) {
+            return null;
+        }
+        char[] out = new char[2];
+        int n = _machine.convert(new char[] { _carry }, 0, 1, out, 0);
+        _carry = 0;
+        return CharBuffer.wrap(out, 0, n);
+    }
+
+    /** My subscriber's subscription. */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                onError(new IllegalArgumentException(
+                    "request must be positive"));
+                return;
+            }
+            Flow.Subscription upstream;
+            CharBuffer last;
+            synchronized (MachineProcessor.this) {
+                _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+                last = _last;
+                _last = null;
+                upstream = _upstream;
+                if (last == null && upstream == null) {
+                    _pending = _pending + n < 0 ? Long.MAX_VALUE
+                        : _pending + n;
+                    return;
+                }
+            }
+            if (last != null) {
+                finish(last);
+            } else {
+                upstream.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                _cancelled = true;
+                _last = null;
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** My subscriber, or null. */
+    private Flow.Subscriber<? super CharBuffer> _subscriber;
+
+    /** My subscription upstream, or null. */
+    private Flow.Subscription _upstream;
+
+    /** Demand received before I had a subscription upstream. */
+    private long _pending;
+
+    /** Chunks requested by my subscriber and not yet published. */
+    private long _demand;
+
+    /** The last chunk, held until there is demand for it once the
+     *  stream has completed, or null. */
+    private CharBuffer _last;
+
+    /** True once my subscriber has cancelled. */
+    private boolean _cancelled;
+
+    /** True once onError or onComplete has been passed downstream. */
+    private volatile boolean _done;
+
+    /** A high surrogate held back from the end of the last chunk, or 0. */
+    private char _carry;
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Miranda Cheung
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A subscriber that requests one chunk at a time and collects
+     *  them. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer chunk) {
+            _chunks.add(chunk.toString());
+            if (!_manual) {
+                _subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            _result.completeExceptionally(excp);
+        }
+
+        @Override
+        public void onComplete() {
+            _result.complete(String.join("", _chunks));
+        }
+
+        /** True iff I request only the first chunk myself. */
+        private boolean _manual;
+
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+
+        /** Chunks received. */
+        private final ArrayList<String> _chunks = new ArrayList<>();
+
+        /** Concatenation of the chunks, once complete. */
+        private final CompletableFuture<String> _result =
+            new CompletableFuture<>();
+    }
+
+    /** Return what the chunks CHUNKS become when passed through a
+     *  MachineProcessor with a machine set to SETTING. */
+    private static String process(String setting, String... chunks)
+        throws Exception {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, setting,
+                                             "(YF) (ZH)");
+        MachineProcessor processor = new MachineProcessor(m);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (String chunk : chunks) {
+                publisher.submit(CharBuffer.wrap(chunk));
+            }
+        }
+        return collector._result.get();
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        String msg = "HELLOWORLDFROMTHEPROCESSORTHATCONVERTSCHUNKS";
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AXLE",
+                                             "(YF) (ZH)");
+        String want = m.convert(msg);
+        assertEquals(want, process("AXLE", msg));
+        assertEquals(want, process("AXLE", msg.substring(0, 7), "",
+                                   msg.substring(7, 30),
+                                   msg.substring(30)));
+    }
+
+    @Test
+    public void testSettings() throws Exception {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AXLE",
+                                             "(YF) (ZH)");
+        String want = m.convert("HELLO");
+        new Settings("* B Beta III IV I QEZV (AB)", m.alphabet(), 5,
+                     m.rotors()).apply(m);
+        want += m.convert("WORLD");
+        assertEquals(want, process("AXLE", "HEL", "LO",
+                                   "* B Beta III IV I QEZV (AB)\n",
+                                   "WORLD"));
+    }
+
+    @Test
+    public void testSecondSubscriber() throws Exception {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AXLE",
+                                             "(YF) (ZH)");
+        String expected = new Machine(m).convert("HELLOWORLD");
+        MachineProcessor processor = new MachineProcessor(m);
+        Collector first = new Collector(), second = new Collector();
+        processor.subscribe(first);
+        processor.subscribe(second);
+        try {
+            second._result.get();
+            fail("second subscriber accepted");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof IllegalStateException);
+        }
+        second._subscription.request(0);
+        second._subscription.request(5);
+        second._subscription.cancel();
+        try (SubmissionPublisher<CharBuffer> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(CharBuffer.wrap("HELLO"));
+            publisher.submit(CharBuffer.wrap("WORLD"));
+        }
+        assertEquals(expected, first._result.get());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        try {
+            process("AXLE", "HELLO", "WORLD!");
+            fail("bad character not reported");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+        }
+    }
+
+    @Test
+    public void testPendingSurrogateAwaitsDemand() throws Exception {
+        String high = "\ud800";
+        Alphabet alpha = new Alphabet("AB" + high + "C");
+        RotorRegistry rotors = new RotorRegistry(alpha);
+        rotors.add("R", 'R', "", "(AC) (B" + high + ")");
+        rotors.add("N", 'N', "", "");
+        Machine m = new Machine(alpha, 2, 0, rotors);
+        m.insertRotors(new String[] { "R", "N" });
+        m.setRotors("A");
+        m.setPlugboard(new Permutation("", alpha));
+        MachineProcessor processor = new MachineProcessor(m);
+        Collector collector = new Collector();
+        collector._manual = true;
+        processor.subscribe(collector);
+        ArrayList<Long> requested = new ArrayList<>();
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested.add(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        processor.onNext(CharBuffer.wrap("AB" + high));
+        processor.onComplete();
+        assertEquals(1, collector._chunks.size());
+        assertFalse(collector._result.isDone());
+        collector._subscription.request(1);
+        assertEquals("C" + high + "B", collector._result.get());
+        assertEquals(1, requested.size());
+    }
+}
@@ -0,0 +1,283 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Miranda Cheung
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final HashMap<String, String> NOTCHES = new HashMap<>();
+    static {
+        NOTCHES.put("I", "Q");
+        NOTCHES.put("II", "E");
+        NOTCHES.put("III", "V");
+        NOTCHES.put("IV", "J");
+        NOTCHES.put("V", "Z");
+        NOTCHES.put("VI", "ZM");
+        NOTCHES.put("VII", "ZM");
+        NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a 5-slot, 3-pawl machine holding the naval rotors, set up
+     *  with ROTORS, SETTING and PLUGBOARD. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation p = new Permutation(NAVALA.get(name), UPPER);
+            if (NOTCHES.containsKey(name)) {
+                all.add(new MovingRotor(name, p, NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                all.add(new Reflector(name, p));
+            } else {
+                all.add(new FixedRotor(name, p));
+            }
+        }
+        Machine m = new Machine(UPPER, 5, 3, all);
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugboard, UPPER));
+        return m;
+    }
+
+    /** The rotors of the standard test configuration. */
+    static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertString() {
+        Machine m = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        assertEquals("SZVGJHUKSG", m.convert("HELLOWORLD"));
+        m = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        assertEquals("HELLOWORLD", m.convert("SZVGJHUKSG"));
+    }
+
+    @Test
+    public void testDoubleStep() {
+        String[] rotors = { "B", "Beta", "I", "II", "III" };
+        Machine m = navalMachine(rotors, "AADU", "");
+        Machine n = navalMachine(rotors, "ABFX", "");
+        m.convert("AAA");
+        assertEquals(m.convert("ABCDEFGHIJ"), n.convert("ABCDEFGHIJ"));
+    }
+
+    @Test
+    public void testBulkConvert() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)")
+            .convert(msg);
+
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)");
+        char[] buf = ("**" + msg).toCharArray();
+        assertEquals(10, m.convert(buf, 2, 10, buf, 2));
+        assertEquals(msg.length() - 10,
+                     m.convert(buf, 12, msg.length() - 10, buf, 12));
+        assertEquals("**" + expected, new String(buf));
+
+        m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)");
+        int[] idx = new int[msg.length()];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = UPPER.toInt(msg.charAt(i));
+        }
+        m.convert(idx, 0, idx.length);
+        for (int i = 0; i < idx.length; i++) {
+            assertEquals(expected.charAt(i), UPPER.toChar(idx[i]));
+        }
+
+        m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)");
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer out = CharBuffer.allocate(7);
+        StringBuilder result = new StringBuilder();
+        while (in.hasRemaining()) {
+            m.convert(in, out);
+            out.flip();
+            result.append(out);
+            out.clear();
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void testStateTable() throws IOException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)");
+        m.setRingstellung("BCDE");
+        StateTable table = new StateTable(m);
+        assertEquals(26 * 26 * 26, table.numStates());
+        int[] idx = new int[msg.length()];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = UPPER.toInt(msg.charAt(i));
+        }
+        int[] copy = idx.clone();
+        int state = table.convert(table.state(), idx, 0, idx.length);
+        m.convert(copy, 0, copy.length);
+        assertArrayEquals(copy, idx);
+        assertEquals(table.state(), state);
+
+        File file = File.createTempFile("enigma", ".tbl");
+        file.deleteOnExit();
+        table.save(file);
+        StateTable mapped = StateTable.load(file, m);
+        assertEquals(table.numStates(), mapped.numStates());
+        for (int s = 0; s < table.numStates(); s += 97) {
+            assertEquals(table.next(s), mapped.next(s));
+            assertEquals(table.convert(s, s % 26), mapped.convert(s, s % 26));
+        }
+    }
+
+    @Test
+    public void testCompiledMachine() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine m = navalMachine(ROTORS, "QEZV", "(HQ) (EX) (IP)");
+        m.setRingstellung("BCDE");
+        CompiledMachine cm = CompiledMachine.compile(m);
+        int[] idx = new int[msg.length()];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = UPPER.toInt(msg.charAt(i));
+        }
+        int[] copy = idx.clone();
+        cm.convert(idx, 0, 10);
+        for (int i = 10; i < idx.length; i++) {
+            idx[i] = cm.convert(idx[i]);
+        }
+        m.convert(copy, 0, copy.length);
+        assertArrayEquals(copy, idx);
+        assertArrayEquals(m.settings(), cm.settings());
+    }
+
+    @Test
+    public void testBatchMachine() {
+        String[] starts = { "AAAA", "QEZV", "AXLE", "ZZZZ", "MDUQ" };
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine m = navalMachine(ROTORS, "AAAA", "(HQ) (EX) (IP)");
+        m.setRingstellung("BCDE");
+        BatchMachine bm = new BatchMachine(m);
+        int[][] msgs = new int[starts.length][];
+        int[][] settings = new int[starts.length][];
+        String[] expected = new String[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            String text = msg.substring(0, 5 + 9 * i);
+            m.setRotors(starts[i] + "BCDE");
+            settings[i] = m.settings();
+            expected[i] = m.convert(text);
+            msgs[i] = new int[text.length()];
+            for (int t = 0; t < text.length(); t++) {
+                msgs[i][t] = UPPER.toInt(text.charAt(t));
+            }
+        }
+        bm.convert(msgs, settings);
+        for (int i = 0; i < starts.length; i++) {
+            String got = "";
+            for (int c : msgs[i]) {
+                got += UPPER.toChar(c);
+            }
+            assertEquals(expected[i], got);
+        }
+    }
+
+    @Test
+    public void testCopiesRunConcurrently() throws InterruptedException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String[] starts = { "AXLE", "QEZV", "ZZZZ", "MDUQ" };
+        Machine shared = navalMachine(ROTORS, "AAAA", "(YF) (ZH)");
+        Machine[] copies = new Machine[starts.length];
+        String[] results = new String[starts.length];
+        Thread[] threads = new Thread[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            int k = i;
+            copies[k] = new Machine(shared);
+            copies[k].setRotors(starts[k]);
+            threads[k] = new Thread(() -> {
+                String out = "";
+                for (int rep = 0; rep < 200; rep++) {
+                    out = copies[k].convert(msg);
+                }
+                results[k] = out;
+            });
+            threads[k].start();
+        }
+        for (int i = 0; i < starts.length; i++) {
+            threads[i].join();
+            Machine fresh = navalMachine(ROTORS, starts[i], "(YF) (ZH)");
+            fresh.seek(199L * msg.length());
+            assertEquals(fresh.convert(msg), results[i]);
+        }
+        assertArrayEquals(new int[5], shared.settings());
+    }
+
+    @Test
+    public void testSeek() {
+        String[] rotors = { "B", "Beta", "VI", "VII", "VIII" };
+        Machine m = navalMachine(rotors, "ALMY", "");
+        Machine n = navalMachine(rotors, "ALMY", "");
+        int[] msg = new int[20000];
+        for (long skip : new long[] { 0, 1, 2, 25, 650, 677, 16900, 1 }) {
+            m.seek(skip);
+            n.convert(msg, 0, (int) skip);
+            assertArrayEquals(n.settings(), m.settings());
+        }
+        m.retreat(16900);
+        assertEquals(m.position(), 677 + 650 + 25 + 2 + 1 + 1);
+        n = navalMachine(rotors, "ALMY", "");
+        n.convert(msg, 0, (int) m.position());
+        assertArrayEquals(n.settings(), m.settings());
+        assertEquals(n.convert("HELLOWORLD"), m.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void testConvertParallel() {
+        char[] msg = new char[300000];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = UPPER_STRING.charAt((i * 7 + i / 3) % 26);
+        }
+        String expected = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)")
+            .convert(new String(msg));
+        Machine m = navalMachine(ROTORS, "AXLE", "(HQ) (EX) (IP)");
+        char[] out = new char[msg.length];
+        assertEquals(msg.length,
+                     m.convertParallel(msg, 0, msg.length, out, 0));
+        assertEquals(expected, new String(out));
+        assertEquals(msg.length, m.position());
+    }
+
+    @Test
+    public void testConvertParallelOnFreshCopies() {
+        int[] msg = new int[200000];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = (i * 11 + i / 5) % 26;
+        }
+        Machine original = navalMachine(ROTORS, "BQMJ", "(AZ)");
+        int[] expected = msg.clone();
+        new Machine(original).convert(expected, 0, expected.length);
+        for (int trial = 0; trial < 10; trial++) {
+            int[] out = msg.clone();
+            new Machine(original).convertParallel(out, 0, out.length);
+            assertArrayEquals(expected, out);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        navalMachine(ROTORS, "AXLE", "").convert("HELLO WORLD");
+    }
+}
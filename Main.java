@@ -1,14 +1,35 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.Scanner;
 import java.util.NoSuchElementException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import static enigma.EnigmaException.*;
@@ -20,15 +41,112 @@ public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  ARGS[0] is the name of a configuration file, or of a configuration
+     *  image made by running with the arguments --compile CONFIG IMAGE.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  standard output.  With the arguments --mmap CONFIG INPUT OUTPUT,
+     *  a large file is instead converted through memory maps (see
+     *  convertMapped); OUTPUT may be INPUT.  With --parallel before the
+     *  usual arguments, the sections of the input, each a settings line
+     *  and the messages after it, are converted on one thread per
+     *  processor (see SectionPool).  With the arguments --batch CONFIG
+     *  INPUT OUTDIR, each file in the directory INPUT, or matching the
+     *  glob INPUT (such as msgs/*.in), is converted into a file of the
+     *  same name in OUTDIR (see batch).  With the arguments --checkpoint
+     *  CHECKPOINT CONFIG INPUT OUTPUT, the file INPUT is converted into
+     *  OUTPUT as usual, but the state of the conversion is saved in the
+     *  file CHECKPOINT from time to time, and --resume with the same
+     *  arguments continues from the last state saved (see
+     *  checkpointed).  With the arguments --serve CONFIG ADDRESS, messages
+     *  are converted for clients connecting to ADDRESS (see serve).
+     *  With the arguments --bombe CONFIG CRIB CIPHER, the rotor orders,
+     *  settings and plugboard pairs under which CRIB could encipher to
+     *  CIPHER are printed (see bombe).  With the arguments --ioc CONFIG
+     *  INPUT [TOP], the TOP (by default IocSearch.TOP) most likely rotor
+     *  orders, settings and ring settings for the ciphertext in the file
+     *  INPUT are printed (see ioc).  With --table TABLE before the usual
+     *  arguments, messages are converted through a StateTable kept in
+     *  the file TABLE (see tabulated).
+     *  Exits normally if there are no errors in the input; otherwise
+     *  with code 1. */
     public static void main(String... args) {
         try {
+            if (args.length > 0 && args[0].equals("--compile")) {
+                if (args.length != 3) {
+                    throw error("usage: --compile CONFIG IMAGE");
+                }
+                new Main(new String[] { args[1] }).compile(args[2]);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--mmap")) {
+                if (args.length != 4) {
+                    throw error("usage: --mmap CONFIG INPUT OUTPUT");
+                }
+                new Main(new String[] { args[1] }).convertMapped(args[2],
+                                                                 args[3]);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--batch")) {
+                if (args.length != 4) {
+                    throw error("usage: --batch CONFIG INPUT OUTDIR");
+                }
+                if (new Main(new String[] { args[1] }).batch(args[2],
+                                                             args[3])) {
+                    return;
+                }
+                System.exit(1);
+            }
+            if (args.length > 0 && (args[0].equals("--checkpoint")
+                                    || args[0].equals("--resume"))) {
+                if (args.length != 5) {
+                    throw error("usage: %s CHECKPOINT CONFIG INPUT OUTPUT",
+                                args[0]);
+                }
+                new Main(new String[] { args[2] })
+                    .checkpointed(args[1], args[3], args[4],
+                                  args[0].equals("--resume"));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--serve")) {
+                if (args.length != 3) {
+                    throw error("usage: --serve CONFIG ADDRESS");
+                }
+                new Main(new String[] { args[1] }).serve(args[2]);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--bombe")) {
+                if (args.length != 4) {
+                    throw error("usage: --bombe CONFIG CRIB CIPHER");
+                }
+                new Main(new String[] { args[1] }).bombe(args[2], args[3]);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--ioc")) {
+                if (args.length != 3 && args.length != 4) {
+                    throw error("usage: --ioc CONFIG INPUT [TOP]");
+                }
+                new Main(new String[] { args[1] })
+                    .ioc(args[2], args.length == 4 ? args[3] : null);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--table")) {
+                if (args.length < 3) {
+                    throw error("usage: --table TABLE CONFIG [INPUT "
+                                + "[OUTPUT]]");
+                }
+                new Main(Arrays.copyOfRange(args, 2, args.length))
+                    .tabulated(args[1]);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--parallel")) {
+                new Main(Arrays.copyOfRange(args, 1, args.length),
+                         Runtime.getRuntime().availableProcessors())
+                    .process();
+                return;
+            }
             new Main(args).process();
             return;
         } catch (EnigmaException excp) {
@@ -39,22 +157,53 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        this(args, 0);
+    }
+
+    /** Check ARGS and open the necessary files (see comment on main),
+     *  converting sections on THREADS threads if THREADS > 0. */
+    Main(String[] args, int threads) {
+        _threads = threads;
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (ConfigImage.isImage(new File(args[0]))) {
+            _image = ConfigImage.load(new File(args[0]));
+        } else {
+            _config = getInput(args[0]);
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = new MessageReader(getReader(args[1]));
         } else {
-            _input = new Scanner(System.in);
+            _input = new MessageReader(new InputStreamReader(System.in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = new GroupWriter(getOutput(args[2]));
         } else {
-            _output = System.out;
+            _output = new GroupWriter(new OutputStreamWriter(System.out));
+        }
+    }
+
+    /** A Main converting the file named INPUT into the file named OUTPUT
+     *  with the configuration already read by BATCH. */
+    private Main(Main batch, String input, String output) {
+        _threads = 0;
+        _alphabet = batch._alphabet;
+        _rotors = batch._rotors;
+        _M = new Machine(batch._M);
+        _input = new MessageReader(getReader(input));
+        try {
+            _output = new GroupWriter(getOutput(output));
+        } catch (EnigmaException excp) {
+            try {
+                _input.close();
+            } catch (IOException ignored) {
+                /* Report only the first error. */
+            }
+            throw excp;
         }
     }
 
@@ -67,10 +216,19 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
+        try {
+            return new InputStreamReader(new FileInputStream(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Writer writing to the file named NAME. */
+    private Writer getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new OutputStreamWriter(new FileOutputStream(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -78,57 +236,555 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  The input is read a line at a time, and
+     *  message lines a chunk at a time, so memory use does not depend on
+     *  the length of the input or of its lines.  Output produced before
+     *  an error is still written. */
     private void process() {
         _M = readConfig();
-        String setting = "";
-        if (_input.hasNext("[*]")) {
-            setting = _input.nextLine();
-        } else {
-            throw error("settings line not found");
+        convert();
+    }
+
+    /** Apply _M to the messages in _input, sending the results to
+     *  _output. */
+    private void convert() {
+        try {
+            try {
+                if (_threads > 0) {
+                    processSections();
+                } else {
+                    processLines();
+                }
+            } finally {
+                _output.flush();
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
         }
-        processPt2(setting);
-        while (_input.hasNextLine()) {
-            String s = _input.nextLine();
-            if (s.contains("*")) {
-                String temp = s.replaceAll(" ", "");
-                if (temp.substring(0, 1).equals("*")) {
-                    while (s.substring(0, 1).equals(" ")) {
-                        s = s.substring(1);
+    }
+
+    /** Convert as process does, but through the StateTable of each
+     *  section's configuration, which is mapped from the file named
+     *  TABLE when that holds it, and otherwise built and saved there in
+     *  place of whatever table it held.  A configuration used day after
+     *  day is thus built once. */
+    void tabulated(String table) {
+        _tableFile = new File(table);
+        process();
+    }
+
+    /** Return the StateTable for _M as now set up, from _tableFile if
+     *  possible (see tabulated). */
+    private StateTable stateTable() {
+        if (StateTable.isTable(_tableFile)) {
+            try {
+                return StateTable.load(_tableFile, _M);
+            } catch (EnigmaException excp) {
+                /* Made for other settings: replace it. */
+            }
+        } else if (_tableFile.exists()) {
+            throw error("%s is not a state table", _tableFile);
+        }
+        StateTable table = new StateTable(_M);
+        table.save(_tableFile);
+        return table;
+    }
+
+    /** Convert the file named INPUT into the file named OUTPUT, saving a
+     *  Checkpoint in the file named CKPT after a message line whenever
+     *  CHECKPOINT_INTERVAL has passed since the last, and once more at
+     *  the end.  If RESUME, start instead from the checkpoint in CKPT:
+     *  cut OUTPUT back to the length it had then, restore the machine,
+     *  and continue reading INPUT from where it was. */
+    void checkpointed(String ckpt, String input, String output,
+                      boolean resume) {
+        _M = readConfig();
+        _checkpointFile = Paths.get(ckpt);
+        _resume = resume ? Checkpoint.read(_checkpointFile) : null;
+        _input = new MessageReader(getReader(input));
+        try {
+            if (_resume != null) {
+                try (FileChannel out = FileChannel.open(
+                         Paths.get(output), StandardOpenOption.WRITE)) {
+                    if (out.size() < _resume.outputBytes()) {
+                        throw error("%s is shorter than at the checkpoint",
+                                    output);
                     }
-                    processPt2(s);
-                } else {
+                    out.truncate(_resume.outputBytes());
+                }
+                _input.resume(_resume.inputChars());
+            }
+            _outFile = new FileOutputStream(output, _resume != null);
+        } catch (IOException excp) {
+            throw error("could not resume: %s", excp.getMessage());
+        }
+        _output = new GroupWriter(new OutputStreamWriter(_outFile));
+        _lastCheckpoint = System.nanoTime();
+        try {
+            convert();
+            checkpoint();
+        } finally {
+            close();
+        }
+    }
+
+    /** Read the configuration in _config once, and convert the messages
+     *  of clients connecting to the address named ADDRESS (see
+     *  EnigmaServer.address) until killed, printing the request
+     *  latencies every REPORT_INTERVAL milliseconds when there have been
+     *  new requests. */
+    private void serve(String address) {
+        _M = readConfig();
+        try (EnigmaServer server = new EnigmaServer(_M, this::settings)) {
+            server.bind(EnigmaServer.address(address));
+            System.out.printf("listening on %s%n", address);
+            Thread reporter = new Thread(() -> report(server));
+            reporter.setDaemon(true);
+            reporter.start();
+            server.serve();
+        } catch (IOException excp) {
+            throw error("could not serve on %s: %s", address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Read the configuration in _config, run a Bombe over every rotor
+     *  order it allows, looking for the settings under which CRIB
+     *  enciphers to CIPHER (spaces in either are ignored), and print
+     *  each stop found as a settings line. */
+    private void bombe(String crib, String cipher) {
+        _M = readConfig();
+        Bombe bombe = new Bombe(_M, crib.replace(" ", ""),
+                                cipher.replace(" ", ""));
+        for (Bombe.Stop stop
+                 : bombe.run(Bombe.orders(_M),
+                             Runtime.getRuntime().availableProcessors())) {
+            System.out.println(stop);
+        }
+    }
+
+    /** Read the configuration in _config, search every rotor order it
+     *  allows for the rotors that best decrypt the ciphertext in the file
+     *  INPUT (whose white space is ignored), and print the best TOP of
+     *  them (IocSearch.TOP if TOP is null), each as its index of
+     *  coincidence followed by a settings line without a plugboard. */
+    private void ioc(String input, String top) {
+        _M = readConfig();
+        String cipher;
+        int keep;
+        try {
+            cipher = Files.readString(Paths.get(input)).replaceAll("\\s", "");
+            keep = top == null ? IocSearch.TOP : Integer.parseInt(top);
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", input, excp.getMessage());
+        } catch (NumberFormatException excp) {
+            throw error("bad number of candidates %s", top);
+        }
+        IocSearch search = new IocSearch(_M, cipher, keep);
+        for (IocSearch.Candidate candidate
+                 : search.run(Bombe.orders(_M),
+                              Runtime.getRuntime().availableProcessors())) {
+            System.out.printf("%.5f %s%n", candidate.ioc(), candidate);
+        }
+    }
+
+    /** Print the latencies of SERVER's requests every REPORT_INTERVAL
+     *  milliseconds when there have been new requests. */
+    private static void report(EnigmaServer server) {
+        long reported = 0;
+        try {
+            while (true) {
+                Thread.sleep(REPORT_INTERVAL);
+                long count = server.latencies().count();
+                if (count != reported) {
+                    reported = count;
+                    System.out.println(server.latencies().summary());
+                }
+            }
+        } catch (InterruptedException excp) {
+            /* Stop reporting. */
+        }
+    }
+
+    /** Save the state of the conversion in _checkpointFile, once all the
+     *  output so far is safely in the output file. */
+    private void checkpoint() {
+        try {
+            _output.flush();
+            FileChannel out = _outFile.getChannel();
+            out.force(false);
+            new Checkpoint(_input.position(), out.position(), _setting, _M)
+                .write(_checkpointFile);
+        } catch (IOException excp) {
+            throw error("could not save checkpoint: %s", excp.getMessage());
+        }
+        _lastCheckpoint = System.nanoTime();
+    }
+
+    /** Read the configuration in _config once, and use it to convert
+     *  each file in the directory INPUT, or matching the glob INPUT, into
+     *  a file of the same name in the directory OUTDIR, created if need
+     *  be.  Files are converted concurrently, at most one per processor
+     *  at a time.  An error in one file is reported but does not stop
+     *  the others.  The time taken by each file, or its error, is printed
+     *  on the standard output, in the order of the file names.  Returns
+     *  true iff every file was converted without error. */
+    boolean batch(String input, String outDir) {
+        long start = System.nanoTime();
+        _M = readConfig();
+        List<Path> files = batchFiles(input);
+        Path dir = Paths.get(outDir);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException excp) {
+            throw error("could not create %s", outDir);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+        List<Future<String>> reports = new ArrayList<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (Path file : files) {
+            Path out = dir.resolve(file.getFileName());
+            reports.add(workers.submit(() -> convertFile(file, out,
+                                                         failed)));
+        }
+        workers.shutdown();
+        try {
+            for (Future<String> report : reports) {
+                System.out.println(report.get());
+            }
+        } catch (InterruptedException excp) {
+            throw error("batch interrupted");
+        } catch (ExecutionException excp) {
+            throw error("batch failed: %s", excp.getCause());
+        }
+        System.out.printf("%d files, %d failed, %.1f ms%n", files.size(),
+                          failed.get(), (System.nanoTime() - start) / 1e6);
+        return failed.get() == 0;
+    }
+
+    /** Return the files named by INPUT, a directory or a glob whose
+     *  wildcards are all in its last component, in order of name. */
+    private static List<Path> batchFiles(String input) {
+        Path path = Paths.get(input);
+        Path dir = path;
+        PathMatcher matcher = p -> true;
+        if (!Files.isDirectory(path)) {
+            dir = path.getParent() == null ? Paths.get(".")
+                : path.getParent();
+            matcher = dir.getFileSystem()
+                .getPathMatcher("glob:" + path.getFileName());
+        }
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)
+                    && matcher.matches(entry.getFileName())) {
+                    result.add(entry);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not list %s", dir);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Convert the file INPUT into OUTPUT with _M's configuration, and
+     *  return a line reporting the time taken or the error met, counting
+     *  errors in FAILED.  An unexpected exception fails only its own
+     *  file. */
+    private String convertFile(Path input, Path output,
+                               AtomicInteger failed) {
+        long start = System.nanoTime();
+        try {
+            if (sameFile(input, output)) {
+                throw error("output would replace input");
+            }
+            Main file = new Main(this, input.toString(), output.toString());
+            try {
+                file.convert();
+            } finally {
+                file.close();
+            }
+            return String.format("%s: %.1f ms", input,
+                                 (System.nanoTime() - start) / 1e6);
+        } catch (RuntimeException excp) {
+            failed.incrementAndGet();
+            return String.format("%s: failed after %.1f ms: %s", input,
+                                 (System.nanoTime() - start) / 1e6,
+                                 excp instanceof EnigmaException
+                                 ? excp.getMessage() : excp);
+        }
+    }
+
+    /** Close my input and output files. */
+    private void close() {
+        try {
+            try {
+                _input.close();
+            } finally {
+                _output.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not close: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the file named INPUT into the file named OUTPUT, which
+     *  may be the same file, using memory maps.  The first line of INPUT
+     *  must be a settings line, which is copied unchanged; after it, every
+     *  byte that is in the (ASCII) alphabet is converted, and all others
+     *  are copied.  No grouping is done, so the output has the same
+     *  layout as the input. */
+    private void convertMapped(String input, String output) {
+        _M = readConfig();
+        Path in = Paths.get(input), out = Paths.get(output);
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dest = sameFile(in, out) ? null
+                 : FileChannel.open(out, StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileChannel target = dest;
+            if (dest == null) {
+                target = FileChannel.open(in, StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+            }
+            try (FileChannel to = target) {
+                long size = src.size();
+                ByteBuffer head = src.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          Math.min(size, MAX_SETTINGS));
+                int end = 0;
+                while (end < head.limit() && head.get(end) != '\n') {
+                    end += 1;
+                }
+                if (end == head.limit() && end < size) {
+                    throw error("settings line not found");
+                }
+                int start = Math.min(end + 1, head.limit());
+                byte[] line = new byte[end];
+                head.get(line);
+                String setting = new String(line).trim();
+                if (!setting.startsWith("*")) {
+                    throw error("settings line not found");
+                }
+                setUp(_M, setting);
+                to.write(head.position(0).limit(start), 0);
+                new FileConverter(_M).convert(src, to, start, size - start);
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s: %s", input, excp.getMessage());
+        }
+    }
+
+    /** Return true iff A and B name the same existing file. */
+    private static boolean sameFile(Path a, Path b) {
+        try {
+            return Files.exists(b) && Files.isSameFile(a, b);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Process the lines of _input as processLines does, but converting
+     *  sections on _threads threads. */
+    private void processSections() throws IOException {
+        _pool = new SectionPool(_M, this::settings, _output, _threads);
+        try {
+            try {
+                processLines();
+            } catch (EnigmaException excp) {
+                _pool.fail(excp);
+            }
+            _pool.finish();
+        } finally {
+            _pool.close();
+        }
+    }
+
+    /** Process the lines of _input, starting with the first settings
+     *  line, whose first token must be "*", or, when resuming, with the
+     *  line after the checkpoint _resume. */
+    private void processLines() throws IOException {
+        if (_resume != null) {
+            _setting = _resume.setting();
+            setUp(_M, _setting);
+            _resume.restore(_M);
+        } else {
+            processFirstLine();
+        }
+        int blank = 0, spaces = -1, other = -1;
+        while (true) {
+            int kind = _input.next();
+            switch (kind) {
+            case MessageReader.EMPTY:
+                blank += 1;
+                break;
+            case MessageReader.SPACES:
+                spaces = spaces < 0 ? blank : spaces;
+                blank += 1;
+                break;
+            case MessageReader.WHITESPACE:
+                other = other < 0 ? blank : other;
+                blank += 1;
+                break;
+            case MessageReader.MESSAGE:
+                printBlankLines(blank, other);
+                blank = 0;
+                spaces = other = -1;
+                if (_input.leadingOther()) {
+                    throw error("letter does not exist in alphabet");
+                }
+                printMessageLine();
+                if (_checkpointFile != null && System.nanoTime()
+                    - _lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                    checkpoint();
+                }
+                break;
+            default:
+                printBlankLines(blank, spaces < 0 ? other
+                                : other < 0 ? spaces : Math.min(spaces, other));
+                blank = 0;
+                spaces = other = -1;
+                if (kind == MessageReader.EOF) {
+                    return;
+                } else if (_input.leadingOther()) {
                     throw error("message cannot contain *");
                 }
-            } else {
-                printMessageLine(s);
+                startSection(_input.restOfLine());
             }
         }
     }
 
-    /** Sets the settings, an extension of process().
-     * @param setting contains the settings line
-     */
-    public void processPt2(String setting) {
-        while (setting.substring(0, 1).equals(" ")) {
-            setting = setting.substring(1);
+    /** Process the first line of _input, which must be a settings line
+     *  whose first token is "*". */
+    private void processFirstLine() throws IOException {
+        if (_input.next() != MessageReader.SETTINGS) {
+            throw error("settings line not found");
         }
-        if (setting.length() < 1 || !setting.substring(0, 1).equals("*")) {
+        String setting = _input.restOfLine();
+        if (setting.length() > 1
+            && !Character.isWhitespace(setting.charAt(1))) {
+            throw error("settings line not found");
+        } else if (_input.leadingOther()) {
             throw error("first character must be *");
         }
-        if (_M == null) {
-            throw error("Machine M must be initialized");
+        startSection(setting);
+    }
+
+    /** Set up _M according to SETTING, or, if converting on several
+     *  threads, start a new section with it. */
+    private void startSection(String setting) throws IOException {
+        if (_pool != null) {
+            _pool.section(setting);
+        } else {
+            setUp(_M, setting);
+            _setting = setting;
+            if (_tableFile != null) {
+                _table = stateTable();
+            }
+        }
+    }
+
+    /** Print COUNT whitespace-only lines of input as empty lines, except
+     *  that if BAD >= 0, line number BAD (from 0) is not a valid message
+     *  and ends processing.  Spaces are dropped from lines in a run of
+     *  message lines, but not from those just before a settings line or
+     *  the end of the input, which is why BAD depends on what follows. */
+    private void printBlankLines(int count, int bad) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (i == bad) {
+                throw error("letter does not exist in alphabet");
+            } else if (_pool != null) {
+                _pool.blankLine();
+            } else {
+                _output.endLine();
+            }
+        }
+    }
+
+    /** Convert the rest of the current message line of _input, without
+     *  its spaces, and print it in groups of five (except that the last
+     *  group may have fewer letters). */
+    private void printMessageLine() throws IOException {
+        if (_pool != null) {
+            _pool.messageLine(readMessageLine());
+            return;
+        }
+        int len = 0;
+        while (true) {
+            int n = _input.read(_chunk, len, CHUNK - len);
+            if (n < 0) {
+                break;
+            }
+            for (int i = len, end = len + n; i < end; i++) {
+                if (_chunk[i] != ' ') {
+                    _chunk[len++] = _chunk[i];
+                }
+            }
+            if (len == CHUNK) {
+                boolean split = Character.isHighSurrogate(_chunk[len - 1]);
+                convertChunk(split ? len - 1 : len);
+                len = 0;
+                if (split) {
+                    _chunk[len++] = _chunk[CHUNK - 1];
+                }
+            }
         }
-        setUp(_M, setting);
-        while (_input.hasNext("[^*].*")) {
-            String msg = _input.nextLine().replaceAll(" ", "");
-            printMessageLine(msg);
+        convertChunk(len);
+        _output.endLine();
+    }
+
+    /** Return the rest of the current message line of _input, without
+     *  its spaces. */
+    private char[] readMessageLine() throws IOException {
+        char[] line = _chunk.clone();
+        int len = 0;
+        while (true) {
+            if (len == line.length) {
+                line = Arrays.copyOf(line, 2 * len);
+            }
+            int n = _input.read(line, len, line.length - len);
+            if (n < 0) {
+                return Arrays.copyOf(line, len);
+            }
+            for (int i = len, end = len + n; i < end; i++) {
+                if (line[i] != ' ') {
+                    line[len++] = line[i];
+                }
+            }
         }
     }
 
+    /** Convert the first LEN chars of _chunk and print them as part of
+     *  the current line. */
+    private void convertChunk(int len) throws IOException {
+        int n = _table != null
+            ? _table.convert(_chunk, 0, len, _converted, 0)
+            : _M.convert(_chunk, 0, len, _converted, 0);
+        _output.write(_converted, 0, n);
+    }
+
+    /** Write the configuration in _config to the file named NAME as a
+     *  ConfigImage, which may be given in place of the configuration
+     *  file in later runs. */
+    private void compile(String name) {
+        Machine machine = readConfig();
+        ConfigImage.write(new File(name), _alphabet, machine.numRotors(),
+                          machine.numPawls(), _rotors);
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, or from the configuration image _image if there is
+     *  one. */
     private Machine readConfig() {
+        if (_image != null) {
+            _alphabet = _image.alphabet();
+            _rotors = _image;
+            return new Machine(_alphabet, _image.numRotors(),
+                               _image.numPawls(), _image);
+        }
         try {
             String chars = "", next = "";
             if (_config.hasNext()) {
@@ -144,19 +800,20 @@ public final class Main {
                 throw error("need int for numPawls");
             }
             pawls = _config.nextInt();
+            _rotors = new RotorRegistry(_alphabet);
             while (_config.hasNext()) {
-                _allRotors.add(readRotor());
+                readRotor();
             }
-            return new Machine(_alphabet, numRotors, pawls, _allRotors);
+            return new Machine(_alphabet, numRotors, pawls, _rotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Read a rotor description from _config and add it to _rotors.
+     *  Its wiring is only parsed when a settings line first uses it. */
+    private void readRotor() {
         try {
-            Rotor res = null;
             String name = "", rotorType = "", notches = "", cycles = "";
             if (_config.hasNext()) {
                 name = _config.next();
@@ -171,162 +828,113 @@ public final class Main {
             while (_config.hasNext("(\\([^()*]+\\))+")) {
                 cycles += _config.next();
             }
-            if (rotorType.equals("N")) {
-                res = new FixedRotor(name, new Permutation(cycles, _alphabet));
+            if (rotorType.isEmpty()) {
+                throw error("bad rotor description");
             }
-            if (rotorType.equals("M")) {
-                Permutation p = new Permutation(cycles, _alphabet);
-                res = new MovingRotor(name, p, notches);
-            }
-            if (rotorType.equals("R")) {
-                res = new Reflector(name, new Permutation(cycles, _alphabet));
-            }
-            return res;
+            _rotors.add(name, rotorType.charAt(0), notches, cycles);
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment.  Each
+     *  distinct settings line is parsed once; the result is kept in
+     *  _setups while the line stays in use. */
     private void setUp(Machine M, String settings) {
-        settings = settings.substring(1);
-        ArrayList<String> rotors = new ArrayList<String>();
-        String word = ""; int posCycles = 0;
-        while (posCycles < settings.length()) {
-            String letter = settings.substring(posCycles, posCycles + 1);
-            if (letter.equals(" ")) {
-                if (!word.isBlank()) {
-                    rotors.add(word);
-                    word = "";
-                }
-            } else if (letter.equals("(")) {
-                break;
-            } else {
-                word += letter;
-            }
-            posCycles++;
-        }
-        rotors.add(word); int posSet = -1;
-        for (posSet = 0; posSet < rotors.size(); posSet++) {
-            boolean found = false;
-            ArrayList<Rotor> alRtrs = new ArrayList<>(_allRotors);
-            for (Rotor thing: alRtrs) {
-                String x = rotors.get(posSet);
-                String tN = thing.name();
-                if (tN.equals(x)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                break;
-            }
-        }
-        String[] usedRotors = new String[posSet];
-        for (int i = 0; i < posSet; i++) {
-            String temp = rotors.get(i);
-            for (int k = 0; k < i; k++) {
-                if (temp.equals(usedRotors[k])) {
-                    throw error("cannot repeat rotors used");
-                }
-            }
-            usedRotors[i] = temp;
-        }
-        if (usedRotors.length != _M.numRotors()) {
-            throw error("must have numRotors() number of rotors");
-        }
-        M.insertRotors(usedRotors); word = rotors.get(posSet);
-        for (int i = posSet + 1; i < rotors.size(); i++) {
-            word += " " + rotors.get(i);
-        }
-        int wlen = word.replaceAll(" ", "").length();
-        int rlen = usedRotors.length - 1;
-        if (wlen == rlen || wlen == rlen * 2) {
-            M.setRotors(word);
-        } else {
-            throw error("rotor.set() must have either N-1 or N*2-1 settings");
-        }
-        findPlugboardCycles(M, settings, posCycles);
-    }
-
-    /** Finds and sets plugboard.
-     * @param M is the machine
-     * @param setting is the cycles remaining
-     * @param posCycles is the position of the cycles
-     */
-    public void findPlugboardCycles(Machine M, String setting, int posCycles) {
-        String s = setting.substring(posCycles);
-        boolean started = false;
-        boolean hasWords = false;
-        for (int i = 0; i < s.length(); i++) {
-            String curr = s.substring(i, i + 1);
-            if (curr.equals("(")) {
-                if (!started) {
-                    started = true;
-                } else {
-                    throw error("previous cycle not yet closed");
-                }
-            } else if (curr.equals(")")) {
-                if (started) {
-                    if (!hasWords) {
-                        throw error("no letters found in cycle");
-                    }
-                    started = false;
-                    hasWords = false;
-                } else {
-                    throw error("new cycle hasnt started");
-                }
-            } else if (_alphabet.contains(s.charAt(i))) {
-                if (!started) {
-                    throw error("cannot have letter outside of cycle");
-                } else {
-                    hasWords = true;
-                }
-            } else if (curr.equals(" ") && hasWords) {
-                throw error("cannot have space inside a cycle");
-            } else if (!curr.equals(" ")) {
-                throw error("character unknown, does not belong in cycles");
-            }
-        }
-        M.setPlugboard(new Permutation(s, _alphabet));
-
+        settings(settings).apply(M);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        if (msg.length() == 0) {
-            _output.print("\n");
-            return;
-        }
-        int grpD = (msg.length() / 5) * 5;
-        String temp = _M.convert(msg), res = ""; int count = 0;
-        for (int i = 0; i < grpD; i += 5) {
-            res += temp.substring(i, i + 5) + " ";
+    /** Return the parsed form of the settings line SETTINGS, from
+     *  _setups if it is there.  Threads converting sections share
+     *  _setups. */
+    private synchronized Settings settings(String settings) {
+        Settings setup = _setups.get(settings);
+        if (setup == null) {
+            setup = new Settings(settings, _alphabet, _M.numRotors(),
+                                 _rotors);
+            _setups.put(settings, setup);
         }
-        if (grpD != msg.length()) {
-            res += temp.substring(grpD);
-        } else {
-            res = res.substring(0, res.length() - 1);
-        }
-        _output.print(res + "\n");
+        return setup;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageReader _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Compiled machine configuration, used in place of _config. */
+    private ConfigImage _image;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
+
+    /** Longest settings line accepted at the start of a mapped file. */
+    private static final int MAX_SETTINGS = 1 << 20;
+
+    /** Number of message chars converted at a time. */
+    private static final int CHUNK = 1 << 13;
+
+    /** Message chars to be converted. */
+    private final char[] _chunk = new char[CHUNK];
+
+    /** Converted message chars. */
+    private final char[] _converted = new char[2 * CHUNK];
 
     /** All rotors given in config. */
-    private Collection<Rotor> _allRotors = new HashSet<>();
+    private RotorRegistry _rotors;
+
+    /** The most recently used parsed settings lines, by line. */
+    private final LinkedHashMap<String, Settings> _setups =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Settings> eldest) {
+                return size() > MAX_SETUPS;
+            }
+        };
+
+    /** Number of parsed settings lines kept in _setups. */
+    private static final int MAX_SETUPS = 256;
+
+    /** Number of threads converting sections, or 0 to convert on this
+     *  thread as the input is read. */
+    private final int _threads;
+
+    /** Converts sections when _threads > 0. */
+    private SectionPool _pool;
+
+    /** The settings line in force. */
+    private String _setting;
+
+    /** Where the StateTable is kept when converting with one, or
+     *  null. */
+    private File _tableFile;
+
+    /** The StateTable of the current section, or null. */
+    private StateTable _table;
+
+    /** Where checkpoints are saved, or null if they are not. */
+    private Path _checkpointFile;
+
+    /** The checkpoint to resume from, or null. */
+    private Checkpoint _resume;
+
+    /** The output file, when checkpoints are saved. */
+    private FileOutputStream _outFile;
+
+    /** Value of System.nanoTime() at the last checkpoint. */
+    private long _lastCheckpoint;
+
+    /** Milliseconds between reports of server latencies. */
+    private static final long REPORT_INTERVAL = 10_000;
+
+    /** Nanoseconds between checkpoints. */
+    private static final long CHECKPOINT_INTERVAL = 10_000_000_000L;
 
     /** Enigma Machine configured via file. */
     private Machine _M;
@@ -0,0 +1,194 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Miranda Cheung
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A message and its conversion under SETTING. */
+    private static final String SETTING = "* B Beta III IV I AXLE (YF) (ZH)",
+        MESSAGE = "HELLO WORLD", CONVERTED = "SZVGJ HUKSG";
+
+    /** Return a new directory holding a configuration file, "conf",
+     *  with the rotors of SETTING. */
+    private Path setUp() throws IOException {
+        Path dir = _dir = Files.createTempDirectory("enigma");
+        write(dir.resolve("conf"),
+              UPPER_STRING + "\n5 3\n"
+              + "B R " + NAVALA.get("B") + "\n"
+              + "Beta N " + NAVALA.get("Beta") + "\n"
+              + "III MV " + NAVALA.get("III") + "\n"
+              + "IV MJ " + NAVALA.get("IV") + "\n"
+              + "I MQ " + NAVALA.get("I") + "\n");
+        return dir;
+    }
+
+    /** Delete the directory made by setUp. */
+    @After
+    public void tearDown() throws IOException {
+        if (_dir != null) {
+            try (Stream<Path> files = Files.walk(_dir)) {
+                for (Path file : (Iterable<Path>) files
+                         .sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /** The directory made by setUp, or null. */
+    private Path _dir;
+
+    /** Write TEXT to FILE. */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+    }
+
+    /** Return a Main reading the configuration in DIR. */
+    private static Main main(Path dir) {
+        return new Main(new String[] { dir.resolve("conf").toString() });
+    }
+
+    /** Convert INPUT into OUTDIR as Main.batch does, with the
+     *  configuration in DIR, keeping its report in _report instead of
+     *  printing it, and return what batch returns. */
+    private boolean batch(Path dir, String input, String outDir) {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(report, true));
+        try {
+            return main(dir).batch(input, outDir);
+        } finally {
+            System.setOut(stdout);
+            _report = report.toString();
+        }
+    }
+
+    /** The report printed by the last call to batch. */
+    private String _report;
+
+    @Test
+    public void testBatchDirectory() throws IOException {
+        Path dir = setUp();
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = dir.resolve("out");
+        for (int i = 0; i < 4; i++) {
+            write(in.resolve("good" + i), SETTING + "\n" + MESSAGE + "\n");
+        }
+        write(in.resolve("bad"), SETTING + "\nHELLO W0RLD\n");
+        assertFalse(batch(dir, in.toString(), out.toString()));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(CONVERTED + "\n", read(out.resolve("good" + i)));
+        }
+        assertTrue(Files.exists(out.resolve("bad")));
+        assertTrue(_report, _report.contains("5 files, 1 failed"));
+    }
+
+    @Test
+    public void testBatchGlob() throws IOException {
+        Path dir = setUp();
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = dir.resolve("out");
+        write(in.resolve("a.msg"), SETTING + "\n" + MESSAGE + "\n");
+        write(in.resolve("b.msg"), SETTING + "\n" + CONVERTED + "\n");
+        write(in.resolve("c.txt"), "not a message\n");
+        assertTrue(batch(dir, in.resolve("*.msg").toString(),
+                         out.toString()));
+        assertEquals(CONVERTED + "\n", read(out.resolve("a.msg")));
+        assertEquals(MESSAGE + "\n", read(out.resolve("b.msg")));
+        assertFalse(Files.exists(out.resolve("c.txt")));
+    }
+
+    @Test
+    public void testBatchOntoItself() throws IOException {
+        Path dir = setUp();
+        Path in = Files.createDirectory(dir.resolve("in"));
+        String text = SETTING + "\n" + MESSAGE + "\n";
+        write(in.resolve("a.msg"), text);
+        assertFalse(batch(dir, in.toString(), in.toString()));
+        assertEquals(text, read(in.resolve("a.msg")));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Path dir = setUp();
+        String prefix = SETTING + "\n" + MESSAGE + "\n\n" + MESSAGE + "\n";
+        String full = prefix + MESSAGE + "\n"
+            + "* B Beta I III IV ZZZZ\n" + MESSAGE + "\n";
+        write(dir.resolve("prefix"), prefix);
+        write(dir.resolve("full"), full);
+        String ckpt = dir.resolve("ckpt").toString();
+        Path out = dir.resolve("out");
+        main(dir).checkpointed(ckpt, dir.resolve("prefix").toString(),
+                               out.toString(), false);
+        String partial = read(out);
+        write(out, partial + "OUTPUT AFTER THE CHECKPOINT\n");
+        main(dir).checkpointed(ckpt, dir.resolve("full").toString(),
+                               out.toString(), true);
+
+        Path whole = dir.resolve("whole");
+        main(dir).checkpointed(dir.resolve("ckpt2").toString(),
+                               dir.resolve("full").toString(),
+                               whole.toString(), false);
+        assertArrayEquals(Files.readAllBytes(whole),
+                          Files.readAllBytes(out));
+        assertTrue(read(whole).startsWith(partial));
+        assertEquals(CONVERTED + "\n\n", partial.substring(0, 13));
+    }
+
+    @Test
+    public void testTable() throws IOException {
+        Path dir = setUp();
+        String text = SETTING + "\n" + MESSAGE + "\n\n" + MESSAGE + "\n"
+            + "* B Beta I III IV ZZZZ (AB)\n" + MESSAGE + "\n"
+            + SETTING + "\n" + CONVERTED + "\n";
+        write(dir.resolve("in"), text);
+        String conf = dir.resolve("conf").toString(),
+            in = dir.resolve("in").toString(),
+            table = dir.resolve("table").toString();
+        Path plain = dir.resolve("plain"), out = dir.resolve("out");
+        Main.main(conf, in, plain.toString());
+        new Main(new String[] { conf, in, out.toString() }).tabulated(table);
+        assertEquals(read(plain), read(out));
+        assertTrue(StateTable.isTable(new File(table)));
+        write(dir.resolve("in"), SETTING + "\n" + CONVERTED + "\n");
+        new Main(new String[] { conf, in, out.toString() }).tabulated(table);
+        assertEquals(MESSAGE + "\n", read(out));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotTable() throws IOException {
+        Path dir = setUp();
+        write(dir.resolve("in"), SETTING + "\n" + MESSAGE + "\n");
+        new Main(new String[] { dir.resolve("conf").toString(),
+                                dir.resolve("in").toString() })
+            .tabulated(dir.resolve("conf").toString());
+    }
+}
@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A lexer for Enigma input files that never holds more than one
+ *  buffer of input.  Each call to next classifies the following line
+ *  by its first non-whitespace character, consuming any leading
+ *  whitespace.  The rest of a settings line is returned as a String;
+ *  the rest of a message line is read in chunks with read, so message
+ *  lines may be of any length.  Lines end at "\n", "\r\n", "\r",
+ *  U+2028, U+2029 or U+0085, as for Scanner.nextLine, and whitespace
+ *  is as for Character.isWhitespace, as for Scanner tokens.
+ *  @author Miranda Cheung
+ */
+class MessageReader {
+
+    /** The end of the input. */
+    static final int EOF = 0;
+
+    /** A line with no characters. */
+    static final int EMPTY = 1;
+
+    /** A line of one or more spaces. */
+    static final int SPACES = 2;
+
+    /** A line of whitespace including some other than spaces. */
+    static final int WHITESPACE = 3;
+
+    /** A line whose first non-whitespace character is '*'. */
+    static final int SETTINGS = 4;
+
+    /** A line whose first non-whitespace character is not '*'. */
+    static final int MESSAGE = 5;
+
+    /** A lexer reading from INPUT. */
+    MessageReader(Reader input) {
+        _input = input;
+    }
+
+    /** Skip the remainder of the current line, if any, and the leading
+     *  whitespace of the next, and return its kind. */
+    int next() throws IOException {
+        while (_inLine) {
+            if (fill() && isTerminator(_buf[_pos])) {
+                endLine();
+            } else if (_end < 0) {
+                _inLine = false;
+            } else {
+                _pos += 1;
+            }
+        }
+        _leadingOther = false;
+        boolean any = false;
+        while (fill()) {
+            char c = _buf[_pos];
+            if (isTerminator(c)) {
+                endLine();
+                return !any ? EMPTY : _leadingOther ? WHITESPACE : SPACES;
+            } else if (!Character.isWhitespace(c)) {
+                _inLine = true;
+                return c == '*' ? SETTINGS : MESSAGE;
+            }
+            any = true;
+            _leadingOther |= c != ' ';
+            _pos += 1;
+        }
+        if (!any) {
+            return EOF;
+        }
+        return _leadingOther ? WHITESPACE : SPACES;
+    }
+
+    /** Return true iff the leading whitespace of the line last returned
+     *  by next included characters other than spaces. */
+    boolean leadingOther() {
+        return _leadingOther;
+    }
+
+    /** Return the rest of the current line, which must be a settings
+     *  line, without its terminator. */
+    String restOfLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (fill() && !isTerminator(_buf[_pos])) {
+            int start = _pos;
+            while (_pos < _end && !isTerminator(_buf[_pos])) {
+                _pos += 1;
+            }
+            line.append(_buf, start, _pos - start);
+            if (line.length() > MAX_SETTINGS) {
+                throw error("settings line too long");
+            }
+        }
+        return line.toString();
+    }
+
+    /** Read up to LEN characters of the rest of the current message
+     *  line into BUF starting at OFF, and return the number read, or -1
+     *  if the line has ended. */
+    int read(char[] buf, int off, int len) throws IOException {
+        if (!_inLine || !fill() || isTerminator(_buf[_pos])) {
+            return -1;
+        }
+        int n = 0;
+        while (n < len && _pos < _end && !isTerminator(_buf[_pos])) {
+            buf[off + n++] = _buf[_pos++];
+        }
+        return n;
+    }
+
+    /** Return the number of chars of input consumed so far. */
+    long position() {
+        return _base + _pos;
+    }
+
+    /** Continue reading a file that was read up to the end of a line
+     *  (just before its terminator), or up to the end of the input, CHARS
+     *  chars in, as position() reported then.  Must be called before
+     *  anything else is read. */
+    void resume(long chars) throws IOException {
+        char last = '\n';
+        while (position() < chars) {
+            if (!fill()) {
+                throw error("input is shorter than expected");
+            }
+            _pos += (int) Math.min(_end - _pos, chars - position());
+            last = _buf[_pos - 1];
+        }
+        if (last == '\r' && fill() && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+        _inLine = !isTerminator(last);
+    }
+
+    /** Close my input. */
+    void close() throws IOException {
+        _input.close();
+    }
+
+    /** Make sure the buffer holds at least one unread character, if the
+     *  input has not ended, and return true iff it does. */
+    private boolean fill() throws IOException {
+        while (_pos >= _end) {
+            if (_end < 0) {
+                return false;
+            }
+            _base += _end;
+            _end = _input.read(_buf, 0, _buf.length);
+            _pos = 0;
+        }
+        return true;
+    }
+
+    /** Consume the line terminator at _pos, including the "\n" of a
+     *  "\r\n", and note that no line is in progress. */
+    private void endLine() throws IOException {
+        char c = _buf[_pos++];
+        if (c == '\r' && fill() && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+        _inLine = false;
+    }
+
+    /** Return true iff C ends a line. */
+    private static boolean isTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest settings line accepted. */
+    private static final int MAX_SETTINGS = 1 << 20;
+
+    /** Source of input. */
+    private final Reader _input;
+
+    /** Input buffer; _buf[_pos .. _end - 1] has not been consumed. */
+    private final char[] _buf = new char[BUFFER_SIZE];
+
+    /** Number of chars read before those in _buf. */
+    private long _base;
+
+    /** Positions in _buf.  _end is -1 at the end of the input. */
+    private int _pos, _end;
+
+    /** True while the current line's terminator is unconsumed. */
+    private boolean _inLine;
+
+    /** True iff the last line's leading whitespace was not all
+     *  spaces. */
+    private boolean _leadingOther;
+}
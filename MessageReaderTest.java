@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static enigma.MessageReader.*;
+
+/** The suite of all JUnit tests for the MessageReader class.
+ *  @author Miranda Cheung
+ */
+public class MessageReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testKinds() throws IOException {
+        MessageReader in = new MessageReader(new StringReader(
+            "  * B Beta\r\nHELLO WORLD\n\n   \n\t \r\n\t* X\rAB"));
+        assertEquals(SETTINGS, in.next());
+        assertFalse(in.leadingOther());
+        assertEquals("* B Beta", in.restOfLine());
+        assertEquals(MESSAGE, in.next());
+        char[] buf = new char[4];
+        String msg = "";
+        for (int n = in.read(buf, 0, 4); n >= 0; n = in.read(buf, 0, 4)) {
+            msg += new String(buf, 0, n);
+        }
+        assertEquals("HELLO WORLD", msg);
+        assertEquals(EMPTY, in.next());
+        assertEquals(SPACES, in.next());
+        assertEquals(WHITESPACE, in.next());
+        assertEquals(SETTINGS, in.next());
+        assertTrue(in.leadingOther());
+        assertEquals(MESSAGE, in.next());
+        assertEquals(EOF, in.next());
+        assertEquals(EOF, in.next());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        StringBuilder text = new StringBuilder("* B Beta\r\n");
+        for (int i = 0; i < 20000; i++) {
+            text.append("LINE").append(i).append("\r\n");
+        }
+        MessageReader in = new MessageReader(new StringReader(
+            text.toString()));
+        assertEquals(SETTINGS, in.next());
+        in.restOfLine();
+        char[] buf = new char[16];
+        long position = 0;
+        for (int i = 0; i < 15000; i++) {
+            assertEquals(MESSAGE, in.next());
+            while (in.read(buf, 0, buf.length) >= 0) {
+                position = in.position();
+            }
+        }
+        MessageReader again = new MessageReader(new StringReader(
+            text.toString()));
+        again.resume(position);
+        assertEquals(MESSAGE, again.next());
+        int n = again.read(buf, 0, buf.length);
+        assertEquals("LINE15000", new String(buf, 0, n));
+    }
+
+    @Test
+    public void testResumeAtEnd() throws IOException {
+        String done = "* B\nHELLO\r";
+        MessageReader in = new MessageReader(new StringReader(done));
+        assertEquals(SETTINGS, in.next());
+        in.restOfLine();
+        assertEquals(MESSAGE, in.next());
+        assertEquals(EOF, in.next());
+        MessageReader again = new MessageReader(new StringReader(
+            done + "\nWORLD\n"));
+        again.resume(in.position());
+        assertEquals(MESSAGE, again.next());
+        char[] buf = new char[16];
+        int n = again.read(buf, 0, buf.length);
+        assertEquals("WORLD", new String(buf, 0, n));
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            line.append((char) ('A' + i % 26));
+        }
+        MessageReader in = new MessageReader(new StringReader(
+            line + "\n* Z"));
+        assertEquals(MESSAGE, in.next());
+        char[] buf = new char[1000];
+        int total = 0;
+        for (int n = in.read(buf, 0, 1000); n >= 0;
+             n = in.read(buf, 0, 1000)) {
+            assertEquals((char) ('A' + total % 26), buf[0]);
+            total += n;
+        }
+        assertEquals(line.length(), total);
+        assertEquals(SETTINGS, in.next());
+        assertEquals("* Z", in.restOfLine());
+    }
+
+    @Test
+    public void testGroups() throws IOException {
+        StringWriter out = new StringWriter();
+        GroupWriter groups = new GroupWriter(out);
+        char[] text = "ABCDEFGHIJKL".toCharArray();
+        groups.write(text, 0, 3);
+        groups.write(text, 3, 9);
+        groups.endLine();
+        groups.endLine();
+        groups.write(text, 0, 5);
+        groups.endLine();
+        groups.flush();
+        assertEquals("ABCDE FGHIJ KL\n\nABCDE\n", out.toString());
+    }
+}
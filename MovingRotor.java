@@ -14,14 +14,29 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
-        for (int i = 0; i < _notches.length(); i++) {
-            if (!perm.alphabet().contains(_notches.charAt(i))) {
+        _notches = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); ) {
+            int c = notches.codePointAt(i);
+            int k = perm.alphabet().indexOf(c);
+            if (k < 0) {
                 throw error("notch not in alphabet");
             }
+            _notches[k] = true;
+            i += Character.charCount(c);
         }
     }
 
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, and which has a notch at each position P for which
+     *  NOTCHES[P] is true. */
+    MovingRotor(String name, Permutation perm, boolean[] notches) {
+        super(name, perm);
+        if (notches.length != perm.size()) {
+            throw error("notch table has wrong size");
+        }
+        _notches = notches.clone();
+    }
+
     @Override
     void advance() {
         set(permutation().wrap(setting() + 1));
@@ -29,8 +44,12 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        String it = "" + alphabet().toChar(setting());
-        return _notches.contains(it);
+        return _notches[setting()];
+    }
+
+    @Override
+    boolean[] notches() {
+        return _notches;
     }
 
     @Override
@@ -38,6 +57,6 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** Contains the notches of this rotor. */
-    private String _notches;
+    /** Indexed by position; true at the positions of my notches. */
+    private final boolean[] _notches;
 }
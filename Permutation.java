@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -15,102 +17,132 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        boolean[] cycled = new boolean[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        int start = -1;
         for (int i = 0; i < cycles.length(); i++) {
-            for (int j = 0; j < cycles.length(); j++) {
-                String s = cycles.substring(i, i + 1);
-                if (cycles.substring(j, j + 1).equals(s)) {
-                    if (!s.equals("(") && !s.equals(")") && !s.equals(" ")) {
-                        if (j != i) {
-                            throw error("letters in _cycles be duplicates");
-                        }
-                    }
-
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("previous cycle not yet closed");
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("new cycle hasnt started");
                 }
+                addCycle(cycles.substring(start, i), cycled);
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("cannot have letter outside of cycle");
+            }
+        }
+        if (start >= 0) {
+            throw error("previous cycle not yet closed");
+        }
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to TABLE[I], which must hold each index exactly once. */
+    Permutation(Alphabet alphabet, int[] table) {
+        _alphabet = alphabet;
+        if (table.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _forward = table.clone();
+        _inverse = new int[table.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] < 0 || table[i] >= table.length
+                || _inverse[table[i]] >= 0) {
+                throw error("table is not a permutation");
             }
+            _inverse[table[i]] = i;
         }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length(); i++) {
-            if (_cycles.contains(cycle.substring(i, i + 1))) {
-                throw error("_cycles cannot contain duplicates of a letter");
+     *  c0c1...cm, marking each index in CYCLED, where no index may
+     *  already be marked. */
+    private void addCycle(String cycle, boolean[] cycled) {
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < cycle.length(); ) {
+            int c = cycle.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int k = _alphabet.indexOf(c);
+            if (k < 0) {
+                throw error("letter does not exist in alphabet");
             }
+            if (cycled[k]) {
+                throw error("letters in _cycles be duplicates");
+            }
+            cycled[k] = true;
+            if (first < 0) {
+                first = k;
+            } else {
+                link(last, k);
+            }
+            last = k;
         }
-        _cycles += " (" + cycle + ")";
+        if (first >= 0) {
+            link(last, first);
+        }
+    }
 
+    /** Record that index FROM maps to index TO. */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
-        int r = p % size();
+        int n = _forward.length;
+        if (p >= 0 && p < n) {
+            return p;
+        }
+        int r = p % n;
         if (r < 0) {
-            r += size();
+            r += n;
         }
         return r;
     }
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char pp = _alphabet.toChar(p);
-        char cc = permute(pp);
-        return _alphabet.toInt(cc);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char cc = _alphabet.toChar(c);
-        char pp = invert(cc);
-        return _alphabet.toInt(pp);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (!_alphabet.contains(p)) {
-            throw new EnigmaException("letter does not exist in alphabet");
-        }
-        char it = p; int startpos = 0;
-        for (int i = 0; i < _cycles.length(); i++) {
-            if (_cycles.charAt(i) == '(') {
-                startpos = i;
-            }
-            if (_cycles.charAt(i) == p) {
-                if (i + 1 < _cycles.length()) {
-                    it = _cycles.charAt(i + 1);
-                    if (it != ')') {
-                        return it;
-                    } else {
-                        it = _cycles.charAt(startpos + 1);
-                    }
-                }
-            }
-        }
-        return it;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!_alphabet.contains(c)) {
-            throw new EnigmaException("letter does not exist in alphabet");
-        }
-        char input = _alphabet.toChar(0);
-        for (int i = 0; i < _alphabet.size(); i++) {
-            input = _alphabet.toChar(i);
-            if (c == permute(input)) {
-                break;
-            }
-        }
-        return input;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -121,19 +153,38 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < _alphabet.size(); i++) {
-            char x = _alphabet.toChar(i);
-            char y = permute(_alphabet.toChar(i));
-            if (x == y) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Returns true iff OBJ is a Permutation of the same alphabet that
+     *  maps every character as I do. */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return _alphabet == other._alphabet
+            && Arrays.equals(_forward, other._forward);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Cycles of this permutation. */
-    private String _cycles;
+    /** Index of the image of each alphabet index under this permutation. */
+    private final int[] _forward;
+
+    /** Index of the preimage of each alphabet index, i.e. the inverse
+     *  of _forward. */
+    private final int[] _inverse;
 }
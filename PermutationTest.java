@@ -97,6 +97,24 @@ public class PermutationTest {
         assertFalse(p1.derangement());
     }
 
+    @Test
+    public void checkNavalRotors() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateInCycles() {
+        new Permutation("(ABC) (DA)", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnclosedCycle() {
+        new Permutation("(ABC) (D", new Alphabet("ABCD"));
+    }
+
     @Test(expected = EnigmaException.class)
     public void testNotInAlphabet() {
         Permutation p = new Permutation("(BACD)", new Alphabet("ABCD"));
@@ -2,7 +2,10 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor's
+ *  wiring and notches never change once it is made.  Its setting is only
+ *  for use on its own: a Machine keeps the settings of its rotors itself,
+ *  so many machines may share the same rotors.
  *  @author Miranda Cheung
  */
 class Rotor {
@@ -71,17 +74,29 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int setting = setting() - _new0;
-        int thing = _permutation.permute(_permutation.wrap(p + setting));
-        return _permutation.wrap(thing - setting);
+        return convertForward(p, setting() - _new0);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int setting = setting() - _new0;
-        int thing = _permutation.invert(_permutation.wrap((e + setting)));
-        return _permutation.wrap(thing - setting);
+        return convertBackward(e, setting() - _new0);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am turned SHIFT positions
+     *  (my setting less my ring setting) from my 0 position. */
+    int convertForward(int p, int shift) {
+        int thing = _permutation.permute(_permutation.wrap(p + shift));
+        return _permutation.wrap(thing - shift);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am turned
+     *  SHIFT positions from my 0 position. */
+    int convertBackward(int e, int shift) {
+        int thing = _permutation.invert(_permutation.wrap(e + shift));
+        return _permutation.wrap(thing - shift);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -90,6 +105,13 @@ class Rotor {
         return false;
     }
 
+    /** Returns a table, indexed by setting, that is true at each of my
+     *  notches, or null if I have none.  The table must not be
+     *  modified. */
+    boolean[] notches() {
+        return null;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -103,7 +125,7 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** The setting of this rotor. */
     private int _setting;
@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, indexed by name.  Rotors may be
+ *  added already built or just described, in which case the rotor and
+ *  its Permutation are only made the first time the rotor is asked for.
+ *  Reading a large catalog of rotors therefore costs no more than
+ *  storing its text, and finding a rotor takes constant time however
+ *  many there are.  Rotors with the same wiring share one Permutation,
+ *  and the same cycles text is parsed only once.
+ *  @author Miranda Cheung
+ */
+class RotorRegistry {
+
+    /** An empty registry of rotors with alphabet ALPHABET. */
+    RotorRegistry(Alphabet alphabet) {
+        _alphabet = alphabet;
+    }
+
+    /** Add ROTOR, which must use my alphabet. */
+    synchronized void add(Rotor rotor) {
+        Entry entry = new Entry(rotor.name(), 0, null, null);
+        entry._rotor = rotor;
+        put(entry);
+    }
+
+    /** Add the rotor named NAME of kind TYPE ('M' for moving, 'N' for
+     *  fixed, 'R' for a reflector) with the given NOTCHES (for moving
+     *  rotors) and wiring CYCLES, to be built when first needed. */
+    synchronized void add(String name, char type, String notches,
+                          String cycles) {
+        if (type != 'M' && type != 'N' && type != 'R') {
+            throw error("unknown rotor type %c for %s", type, name);
+        }
+        put(new Entry(name, type, notches, cycles));
+    }
+
+    /** Return the number of rotors I hold. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return true iff I hold a rotor named NAME. */
+    synchronized boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the rotor named NAME, building it if need be. */
+    synchronized Rotor get(String name) {
+        Entry entry = _entries.get(name);
+        if (entry == null) {
+            throw error("no rotor named %s", name);
+        }
+        if (entry._rotor == null) {
+            Permutation perm = wiring(entry._cycles);
+            switch (entry._type) {
+            case 'M':
+                entry._rotor = new MovingRotor(name, perm, entry._notches);
+                break;
+            case 'R':
+                entry._rotor = new Reflector(name, perm);
+                break;
+            default:
+                entry._rotor = new FixedRotor(name, perm);
+                break;
+            }
+        }
+        return entry._rotor;
+    }
+
+    /** Return the names of my rotors, in the order they were added. */
+    synchronized ArrayList<String> names() {
+        return new ArrayList<>(_entries.keySet());
+    }
+
+    /** Return the number of distinct wirings built so far. */
+    synchronized int numWirings() {
+        return _wirings.size();
+    }
+
+    /** Add ENTRY, whose name must be new. */
+    private void put(Entry entry) {
+        if (_entries.putIfAbsent(entry._name, entry) != null) {
+            throw error("rotor %s defined twice", entry._name);
+        }
+    }
+
+    /** Return the Permutation given by CYCLES, shared with any other
+     *  rotor with the same wiring. */
+    private Permutation wiring(String cycles) {
+        Permutation perm = _parsed.get(cycles);
+        if (perm == null) {
+            perm = new Permutation(cycles, _alphabet);
+            Permutation same = _wirings.putIfAbsent(perm, perm);
+            if (same != null) {
+                perm = same;
+            }
+            _parsed.put(cycles, perm);
+        }
+        return perm;
+    }
+
+    /** A rotor, as described and, once made, built. */
+    private static class Entry {
+
+        /** A rotor named NAME of kind TYPE with NOTCHES and CYCLES. */
+        Entry(String name, int type, String notches, String cycles) {
+            _name = name;
+            _type = type;
+            _notches = notches;
+            _cycles = cycles;
+        }
+
+        /** My name. */
+        private final String _name;
+
+        /** My kind: 'M', 'N' or 'R'. */
+        private final int _type;
+
+        /** My notches and wiring as written. */
+        private final String _notches, _cycles;
+
+        /** The rotor, or null until it is first needed. */
+        private Rotor _rotor;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** My rotors, by name. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>();
+
+    /** The Permutation built for each cycles text so far. */
+    private final HashMap<String, Permutation> _parsed = new HashMap<>();
+
+    /** Each distinct wiring built so far. */
+    private final HashMap<Permutation, Permutation> _wirings =
+        new HashMap<>();
+}
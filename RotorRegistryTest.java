@@ -0,0 +1,60 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorRegistry class.
+ *  @author Miranda Cheung
+ */
+public class RotorRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testLazyAndShared() {
+        RotorRegistry reg = new RotorRegistry(UPPER);
+        reg.add("I", 'M', "Q", NAVALA.get("I"));
+        reg.add("Copy", 'N', "", NAVALA.get("I").replace(" ", ""));
+        reg.add("B", 'R', "", NAVALA.get("B"));
+        reg.add("Broken", 'N', "", "(AB");
+        assertEquals(4, reg.size());
+        assertEquals(0, reg.numWirings());
+        assertTrue(reg.contains("Broken"));
+        assertFalse(reg.contains("II"));
+
+        Rotor i = reg.get("I");
+        assertTrue(i.rotates());
+        assertTrue(i.notches()[UPPER.toInt('Q')]);
+        assertSame(i, reg.get("I"));
+        Rotor copy = reg.get("Copy");
+        assertFalse(copy.rotates());
+        assertSame(i.permutation(), copy.permutation());
+        assertTrue(reg.get("B").reflecting());
+        assertEquals(2, reg.numWirings());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadWiringFoundOnUse() {
+        RotorRegistry reg = new RotorRegistry(UPPER);
+        reg.add("Broken", 'N', "", "(AB");
+        reg.get("Broken");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateName() {
+        RotorRegistry reg = new RotorRegistry(UPPER);
+        reg.add("I", 'M', "Q", NAVALA.get("I"));
+        reg.add("I", 'N', "", NAVALA.get("II"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissing() {
+        new RotorRegistry(UPPER).get("I");
+    }
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the sections of an input file, each a settings line and the
+ *  lines up to the next, on a pool of threads.  A section does not
+ *  depend on any other, since its settings line resets the machine, so
+ *  each worker converts whole sections with a Machine of its own.  The
+ *  results are written in the order the sections were read: a window
+ *  of at most WINDOW sections per thread is kept in flight, and the
+ *  oldest is always the next to be written, so memory use depends on
+ *  the size of the sections but not on their number.  An error stops
+ *  processing after the output that precedes it, as when converting on
+ *  one thread.
+ *  @author Miranda Cheung
+ */
+class SectionPool {
+
+    /** A pool of THREADS threads converting sections with copies of
+     *  MACHINE, finding the Settings for each settings line with
+     *  SETTINGS, and writing the results to OUTPUT. */
+    SectionPool(Machine machine, Function<String, Settings> settings,
+                GroupWriter output, int threads) {
+        _machines = ThreadLocal.withInitial(() -> new Machine(machine));
+        _settings = settings;
+        _output = output;
+        _window = WINDOW * threads;
+        _workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Start a new section with settings line SETTING, ending the current
+     *  one. */
+    void section(String setting) throws IOException {
+        submit();
+        _current = new Section(setting);
+    }
+
+    /** Add an empty line to the current section. */
+    void blankLine() {
+        _current._lines.add(BLANK);
+    }
+
+    /** Add the message line LINE, without its spaces, to the current
+     *  section. */
+    void messageLine(char[] line) {
+        _current._lines.add(line);
+    }
+
+    /** Note that reading the input stopped with error EXCP after the
+     *  lines so far.  If EXCP is instead the error of a section I have
+     *  written, throw it again, as nothing after it is to be written. */
+    void fail(EnigmaException excp) {
+        if (_stopped) {
+            throw excp;
+        } else if (_current == null) {
+            _current = new Section(null);
+        }
+        _current._error = excp;
+    }
+
+    /** Convert and write everything that remains, and throw the first
+     *  error met, if any. */
+    void finish() throws IOException {
+        submit();
+        while (!_pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    /** Stop my threads. */
+    void close() {
+        _workers.shutdownNow();
+    }
+
+    /** Hand the current section, if any, to a worker, first writing the
+     *  oldest result if the window is full. */
+    private void submit() throws IOException {
+        if (_current == null) {
+            return;
+        }
+        if (_pending.size() >= _window) {
+            writeOldest();
+        }
+        Section section = _current;
+        _current = null;
+        _pending.add(_workers.submit(() -> convert(section)));
+    }
+
+    /** Wait for the oldest section in flight and write its output,
+     *  throwing its error, if any. */
+    private void writeOldest() throws IOException {
+        Result result;
+        try {
+            result = _pending.remove().get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw error("section failed: %s", excp.getCause());
+        }
+        _output.writeLines(result._output, 0, result._output.length);
+        if (result._error != null) {
+            _stopped = true;
+            throw result._error;
+        }
+    }
+
+    /** Return the output of SECTION, converted with this thread's
+     *  machine. */
+    private Result convert(Section section) throws IOException {
+        CharArrayWriter buf = new CharArrayWriter();
+        GroupWriter out = new GroupWriter(buf);
+        EnigmaException failure = section._error;
+        try {
+            if (section._setting != null) {
+                Machine machine = _machines.get();
+                _settings.apply(section._setting).apply(machine);
+                for (char[] line : section._lines) {
+                    convertLine(machine, line, out);
+                }
+            }
+        } catch (EnigmaException excp) {
+            failure = excp;
+        }
+        out.flush();
+        return new Result(buf.toCharArray(), failure);
+    }
+
+    /** Convert LINE with MACHINE and write it to OUT, CHUNK chars at a
+     *  time (keeping surrogate pairs together), as Main does, so that
+     *  an error leaves the same partial output. */
+    private static void convertLine(Machine machine, char[] line,
+                                    GroupWriter out) throws IOException {
+        char[] converted = new char[2 * Math.min(line.length, CHUNK)];
+        for (int i = 0; i < line.length; ) {
+            int len = Math.min(CHUNK, line.length - i);
+            if (i + len < line.length
+                && Character.isHighSurrogate(line[i + len - 1])) {
+                len -= 1;
+            }
+            int n = machine.convert(line, i, len, converted, 0);
+            out.write(converted, 0, n);
+            i += len;
+        }
+        out.endLine();
+    }
+
+    /** A settings line and the lines that follow it. */
+    private static class Section {
+
+        /** A section with settings line SETTING, or none if SETTING is
+         *  null. */
+        Section(String setting) {
+            _setting = setting;
+        }
+
+        /** My settings line. */
+        private final String _setting;
+
+        /** My lines, without spaces; empty for blank lines. */
+        private final ArrayList<char[]> _lines = new ArrayList<>();
+
+        /** The error met reading my lines, or null. */
+        private EnigmaException _error;
+    }
+
+    /** The output of a section and the error that ended it, if any. */
+    private static class Result {
+
+        /** The result of a section with OUTPUT that failed with ERROR
+         *  (null if it did not). */
+        Result(char[] output, EnigmaException error) {
+            _output = output;
+            _error = error;
+        }
+
+        /** Output of the section. */
+        private final char[] _output;
+
+        /** Error, or null. */
+        private final EnigmaException _error;
+    }
+
+    /** Sections in flight per thread. */
+    private static final int WINDOW = 4;
+
+    /** Number of chars converted at a time. */
+    private static final int CHUNK = 1 << 13;
+
+    /** A blank line. */
+    private static final char[] BLANK = new char[0];
+
+    /** Each worker's machine. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Finds the Settings for a settings line. */
+    private final Function<String, Settings> _settings;
+
+    /** Where results go. */
+    private final GroupWriter _output;
+
+    /** Most sections in flight. */
+    private final int _window;
+
+    /** My threads. */
+    private final ExecutorService _workers;
+
+    /** Results of the sections in flight, oldest first. */
+    private final ArrayDeque<Future<Result>> _pending = new ArrayDeque<>();
+
+    /** True once a section's error has been thrown. */
+    private boolean _stopped;
+
+    /** The section being read, or null. */
+    private Section _current;
+}
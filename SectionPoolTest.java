@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.function.Function;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SectionPool class.
+ *  @author Miranda Cheung
+ */
+public class SectionPoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Parses settings lines for 5-slot machines with the naval
+     *  rotors. */
+    private static final Function<String, Settings> PARSE = line -> {
+        RotorRegistry rotors = new RotorRegistry(UPPER);
+        for (String name : NAVALA.keySet()) {
+            rotors.add(name, 'N', "", "");
+        }
+        return new Settings(line, UPPER, 5, rotors);
+    };
+
+    /** Return the settings line for section S. */
+    private static String setting(int s) {
+        return "* B Beta III IV I " + "ABCD".substring(s % 4)
+            + "ZZZZ".substring(4 - s % 4) + " (AB)";
+    }
+
+    /** Return message line K of section S. */
+    private static String message(int s, int k) {
+        return "HELLOWORLD".substring(0, 1 + (s + k) % 10);
+    }
+
+    /** Return the output expected for the first COUNT sections, each
+     *  with LINES message lines and a blank line. */
+    private static String expected(int count, int lines) {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA",
+                                             "");
+        StringBuilder result = new StringBuilder();
+        for (int s = 0; s < count; s++) {
+            PARSE.apply(setting(s)).apply(m);
+            for (int k = 0; k < lines; k++) {
+                String line = m.convert(message(s, k));
+                for (int i = 0; i < line.length(); i += 5) {
+                    result.append(i == 0 ? "" : " ");
+                    result.append(line, i, Math.min(line.length(), i + 5));
+                }
+                result.append("\n");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /** Feed COUNT sections of LINES message lines each to POOL, with a
+     *  bad settings line for section BAD. */
+    private static void feed(SectionPool pool, int count, int lines,
+                             int bad) throws IOException {
+        for (int s = 0; s < count; s++) {
+            pool.section(s == bad ? "* B Beta III IV" : setting(s));
+            for (int k = 0; k < lines; k++) {
+                pool.messageLine(message(s, k).toCharArray());
+            }
+            pool.blankLine();
+        }
+    }
+
+    @Test
+    public void testOrder() throws IOException {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        StringWriter out = new StringWriter();
+        GroupWriter groups = new GroupWriter(out);
+        SectionPool pool = new SectionPool(m, PARSE, groups, 3);
+        feed(pool, 100, 3, -1);
+        pool.finish();
+        pool.close();
+        groups.flush();
+        assertEquals(expected(100, 3), out.toString());
+    }
+
+    @Test
+    public void testError() throws IOException {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        StringWriter out = new StringWriter();
+        GroupWriter groups = new GroupWriter(out);
+        SectionPool pool = new SectionPool(m, PARSE, groups, 3);
+        try {
+            feed(pool, 100, 2, 40);
+            pool.finish();
+            fail("bad settings line not reported");
+        } catch (EnigmaException excp) {
+            pool.close();
+        }
+        groups.flush();
+        assertEquals(expected(40, 2), out.toString());
+    }
+}
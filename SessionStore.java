@@ -0,0 +1,279 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A store of the states of many long-lived sessions, each an Enigma
+ *  conversation with the same rotors in the same slots but with its own
+ *  rotor settings, ring settings and plugboard.  Rather than a Machine
+ *  per session, each session is packed into a few longs: one field of
+ *  just enough bits for each setting and ring setting, and an index
+ *  into a list of plugboards shared by all sessions.  The records are
+ *  kept in one long[] slab alongside an open-addressing table of
+ *  session ids, so the store holds a fixed number of objects however
+ *  many sessions it has.  Converting a chunk for a session unpacks its
+ *  state into a single working Machine, converts, and packs the new
+ *  settings back.  A SessionStore is not safe for concurrent use; give
+ *  each thread its own.
+ *  @author Miranda Cheung
+ */
+class SessionStore {
+
+    /** A store for sessions on copies of MACHINE, whose rotors must be
+     *  inserted.  MACHINE's plugboard, if set, becomes plugboard 0. */
+    SessionStore(Machine machine) {
+        _machine = new Machine(machine);
+        _numRotors = machine.numRotors();
+        int size = machine.alphabet().size();
+        _bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+        int fields = 2 * (_numRotors - 1) + 1;
+        _word = new int[fields];
+        _shift = new int[fields];
+        int word = 0, used = 0;
+        for (int f = 0; f < fields; f++) {
+            int width = f == fields - 1 ? PLUG_BITS : _bits;
+            if (used + width > Long.SIZE) {
+                word += 1;
+                used = 0;
+            }
+            _word[f] = word;
+            _shift[f] = used;
+            used += width;
+        }
+        _words = word + 1;
+        _posns = new int[_numRotors];
+        _rings = new int[_numRotors];
+        if (machine.plugboard() != null) {
+            addPlugboard(machine.plugboard());
+        }
+        allocate(MIN_CAPACITY);
+    }
+
+    /** Add PLUGBOARD to the plugboards available to sessions and return
+     *  its number. */
+    int addPlugboard(Permutation plugboard) {
+        if (_plugboards.size() == 1 << PLUG_BITS) {
+            throw error("too many plugboards");
+        }
+        _plugboards.add(plugboard);
+        return _plugboards.size() - 1;
+    }
+
+    /** Return the number of open sessions. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff session ID is open. */
+    boolean contains(long id) {
+        return find(id) >= 0;
+    }
+
+    /** Open session ID, or reset it if it is open, with rotor settings
+     *  POSNS and ring settings RINGS (alphabet indices indexed by slot,
+     *  as Machine.settings returns them) and plugboard number PLUGBOARD.
+     *  ID may be any long but Long.MIN_VALUE, which marks empty slots. */
+    void open(long id, int[] posns, int[] rings, int plugboard) {
+        if (id == EMPTY) {
+            throw error("invalid session id");
+        } else if (plugboard < 0 || plugboard >= _plugboards.size()) {
+            throw error("no such plugboard");
+        }
+        _machine.setSettings(posns, rings);
+        int slot = find(id);
+        if (slot < 0) {
+            if (2 * (_size + 1) > _ids.length) {
+                allocate(2 * _ids.length);
+            }
+            slot = ~find(id);
+            _ids[slot] = id;
+            _size += 1;
+        }
+        pack(slot, posns, rings, plugboard);
+    }
+
+    /** Open session ID as for open(long, int[], int[], int), with its
+     *  settings and ring settings given by SETTING as for
+     *  Machine.setRotors.  Ring settings not given are 0. */
+    void open(long id, String setting, int plugboard) {
+        Arrays.fill(_rings, 0);
+        _machine.setSettings(_machine.settings(), _rings);
+        _machine.setRotors(setting);
+        for (int k = 1; k < _numRotors; k++) {
+            _rings[k] = _machine.ring(k);
+        }
+        open(id, _machine.settings(), _rings, plugboard);
+    }
+
+    /** Close session ID, if it is open. */
+    void close(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return;
+        }
+        int mask = _ids.length - 1;
+        for (int next = (slot + 1) & mask; _ids[next] != EMPTY;
+             next = (next + 1) & mask) {
+            int home = hash(_ids[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                _ids[slot] = _ids[next];
+                System.arraycopy(_slab, next * _words, _slab, slot * _words,
+                                 _words);
+                slot = next;
+            }
+        }
+        _ids[slot] = EMPTY;
+        _size -= 1;
+    }
+
+    /** Return the current rotor settings of session ID, indexed by
+     *  slot. */
+    int[] settings(long id) {
+        unpack(slot(id));
+        return _posns.clone();
+    }
+
+    /** Replace the LEN alphabet indices starting at MSG[OFF] with their
+     *  encodings/decodings in session ID, advancing its rotors
+     *  accordingly. */
+    void convert(long id, int[] msg, int off, int len) {
+        int slot = slot(id);
+        int plugboard = unpack(slot);
+        _machine.setSettings(_posns, _rings);
+        _machine.setPlugboard(_plugboards.get(plugboard));
+        _machine.convert(msg, off, len);
+        pack(slot, _machine.settings(), _rings, plugboard);
+    }
+
+    /** Return the number of longs holding the state of each session. */
+    int wordsPerSession() {
+        return _words;
+    }
+
+    /** Return the slot of session ID, which must be open. */
+    private int slot(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            throw error("no session %d", id);
+        }
+        return slot;
+    }
+
+    /** Return the slot of ID in _ids if it is there, and otherwise the
+     *  complement of the empty slot where it would go.  The reserved
+     *  id EMPTY is never there. */
+    private int find(long id) {
+        int mask = _ids.length - 1;
+        for (int h = hash(id) & mask; ; h = (h + 1) & mask) {
+            if (_ids[h] == EMPTY) {
+                return ~h;
+            } else if (_ids[h] == id) {
+                return h;
+            }
+        }
+    }
+
+    /** Replace the tables with empty ones with CAPACITY slots, a power
+     *  of 2, and reinsert the sessions. */
+    private void allocate(int capacity) {
+        long[] ids = _ids, slab = _slab;
+        _ids = new long[capacity];
+        _slab = new long[capacity * _words];
+        Arrays.fill(_ids, EMPTY);
+        if (ids == null) {
+            return;
+        }
+        for (int old = 0; old < ids.length; old++) {
+            if (ids[old] != EMPTY) {
+                int slot = ~find(ids[old]);
+                _ids[slot] = ids[old];
+                System.arraycopy(slab, old * _words, _slab, slot * _words,
+                                 _words);
+            }
+        }
+    }
+
+    /** Store POSNS, RINGS and PLUGBOARD as the record in SLOT. */
+    private void pack(int slot, int[] posns, int[] rings, int plugboard) {
+        int base = slot * _words;
+        Arrays.fill(_slab, base, base + _words, 0);
+        for (int k = 1; k < _numRotors; k++) {
+            put(base, 2 * k - 2, posns[k]);
+            put(base, 2 * k - 1, rings[k]);
+        }
+        put(base, _word.length - 1, plugboard);
+    }
+
+    /** Load the record in SLOT into _posns and _rings, and return its
+     *  plugboard number. */
+    private int unpack(int slot) {
+        int base = slot * _words;
+        long mask = (1L << _bits) - 1;
+        for (int k = 1; k < _numRotors; k++) {
+            _posns[k] = (int) get(base, 2 * k - 2, mask);
+            _rings[k] = (int) get(base, 2 * k - 1, mask);
+        }
+        return (int) get(base, _word.length - 1, (1L << PLUG_BITS) - 1);
+    }
+
+    /** Set field F of the record at BASE in _slab to VALUE. */
+    private void put(int base, int f, long value) {
+        _slab[base + _word[f]] |= value << _shift[f];
+    }
+
+    /** Return field F, of the width given by MASK, of the record at BASE
+     *  in _slab. */
+    private long get(int base, int f, long mask) {
+        return (_slab[base + _word[f]] >>> _shift[f]) & mask;
+    }
+
+    /** Returns a well-mixed hash of session id ID. */
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Marks an unused slot of _ids. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** Number of bits in a plugboard number. */
+    private static final int PLUG_BITS = 24;
+
+    /** Initial number of slots. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** The machine that performs all conversions. */
+    private final Machine _machine;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of bits in each setting and ring setting field. */
+    private final int _bits;
+
+    /** Number of longs in each record. */
+    private final int _words;
+
+    /** For each field of a record (the setting and ring setting of each
+     *  slot but the reflector's, then the plugboard number), the word
+     *  of the record holding it and its bit position in that word. */
+    private final int[] _word, _shift;
+
+    /** The plugboards, by number. */
+    private final ArrayList<Permutation> _plugboards = new ArrayList<>();
+
+    /** Scratch rotor and ring settings, indexed by slot. */
+    private final int[] _posns, _rings;
+
+    /** Open-addressing table of session ids. */
+    private long[] _ids;
+
+    /** The record for the session in slot I of _ids occupies
+     *  _slab[I * _words .. (I + 1) * _words - 1]. */
+    private long[] _slab;
+
+    /** Number of open sessions. */
+    private int _size;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Miranda Cheung
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the alphabet indices of the characters of MSG. */
+    private static int[] indices(String msg) {
+        int[] result = new int[msg.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = UPPER.toInt(msg.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testSessions() {
+        String[] rotors = MachineTest.ROTORS;
+        Machine template = MachineTest.navalMachine(rotors, "AAAA", "");
+        SessionStore store = new SessionStore(template);
+        int plug = store.addPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        assertEquals(1, store.wordsPerSession());
+        for (long id = 0; id < 1000; id++) {
+            store.open(id, "AXLE", plug);
+        }
+        store.open(-7, "QEZV BCDE", 0);
+        assertEquals(1001, store.size());
+        int[] msg = indices("HELLOWORLD");
+        store.convert(500, msg, 0, 5);
+        store.convert(500, msg, 5, 5);
+        assertArrayEquals(indices("SZVGJHUKSG"), msg);
+        assertArrayEquals(new int[] { 0, 0, 23, 11, 4 },
+                          store.settings(499));
+
+        Machine m = MachineTest.navalMachine(rotors, "QEZV BCDE", "");
+        int[] expected = indices("FROMHISSHOULDER");
+        m.convert(expected, 0, expected.length);
+        msg = indices("FROMHISSHOULDER");
+        store.convert(-7, msg, 0, msg.length);
+        assertArrayEquals(expected, msg);
+        assertArrayEquals(m.settings(), store.settings(-7));
+
+        for (long id = 0; id < 1000; id += 2) {
+            store.close(id);
+        }
+        assertEquals(501, store.size());
+        assertFalse(store.contains(500));
+        assertTrue(store.contains(501));
+        assertTrue(store.contains(-7));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoSession() {
+        Machine template = MachineTest.navalMachine(MachineTest.ROTORS,
+                                                    "AAAA", "");
+        new SessionStore(template).convert(3, new int[1], 0, 1);
+    }
+
+    @Test
+    public void testReservedId() {
+        Machine template = MachineTest.navalMachine(MachineTest.ROTORS,
+                                                    "AAAA", "");
+        SessionStore store = new SessionStore(template);
+        store.open(Long.MIN_VALUE + 1, "AXLE", 0);
+        assertTrue(store.contains(Long.MIN_VALUE + 1));
+        try {
+            store.open(Long.MIN_VALUE, "AXLE", 0);
+            fail("opened the reserved id");
+        } catch (EnigmaException excp) {
+            assertFalse(store.contains(Long.MIN_VALUE));
+        }
+        assertEquals(1, store.size());
+    }
+}
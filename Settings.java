@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed settings line, such as "* B Beta III IV I AXLE BCDE (HQ)
+ *  (EX)": the rotors to insert, their settings and optional ring
+ *  settings, and the plugboard.  The line is read in one pass, and the
+ *  result can be applied to a machine any number of times, so a line
+ *  that recurs in the input need only be parsed once.
+ *  @author Miranda Cheung
+ */
+class Settings {
+
+    /** The settings given by LINE, which must begin with '*', for
+     *  machines with NUMROTORS slots, alphabet ALPHABET and the rotors
+     *  in ROTORS. */
+    Settings(String line, Alphabet alphabet, int numRotors,
+             RotorRegistry rotors) {
+        if (!line.startsWith("*")) {
+            throw error("first character must be *");
+        }
+        ArrayList<String> words = new ArrayList<>();
+        int i, start = -1;
+        for (i = 1; i < line.length() && line.charAt(i) != '('; i++) {
+            if (line.charAt(i) != ' ') {
+                start = start < 0 ? i : start;
+            } else if (start >= 0) {
+                words.add(line.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            words.add(line.substring(start, i));
+        }
+        int numNames = 0;
+        while (numNames < words.size()
+               && rotors.contains(words.get(numNames))) {
+            numNames++;
+        }
+        _rotors = words.subList(0, numNames).toArray(new String[0]);
+        for (int k = 0; k < numNames; k++) {
+            for (int j = 0; j < k; j++) {
+                if (_rotors[k].equals(_rotors[j])) {
+                    throw error("cannot repeat rotors used");
+                }
+            }
+        }
+        if (numNames != numRotors) {
+            throw error("must have numRotors() number of rotors");
+        }
+        String setting = String.join(" ", words.subList(numNames,
+                                                        words.size()));
+        String letters = setting.replace(" ", "");
+        int slen = letters.codePointCount(0, letters.length());
+        int rlen = numRotors - 1;
+        if (slen != rlen && slen != 2 * rlen) {
+            throw error("rotor.set() must have either N-1 or N*2-1 settings");
+        }
+        int split = setting.offsetByCodePoints(0, rlen);
+        _posns = toIndices(setting.substring(0, split), alphabet);
+        String rings = setting.substring(split).replace(" ", "");
+        if (rings.isEmpty()) {
+            _rings = new int[numRotors];
+        } else if (rings.codePointCount(0, rings.length()) == rlen) {
+            _rings = toIndices(rings, alphabet);
+        } else {
+            throw error("ringstellung not right num of rotors");
+        }
+        _plugboard = plugboard(line.substring(i), alphabet);
+    }
+
+    /** Insert my rotors into MACHINE and set them and its plugboard as
+     *  I describe. */
+    void apply(Machine machine) {
+        machine.insertRotors(_rotors);
+        machine.setSettings(_posns, _rings);
+        machine.setPlugboard(_plugboard);
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return the alphabet indices of the characters of LETTERS, in
+     *  ALPHABET, as settings indexed by slot (starting at slot 1). */
+    private static int[] toIndices(String letters, Alphabet alphabet) {
+        int[] result = new int[letters.codePointCount(0, letters.length())
+                               + 1];
+        for (int i = 0, k = 1; k < result.length; k++) {
+            int c = letters.codePointAt(i);
+            result[k] = alphabet.indexOf(c);
+            if (result[k] < 0) {
+                throw error("setting letter not in alphabet");
+            }
+            i += Character.charCount(c);
+        }
+        return result;
+    }
+
+    /** Return the plugboard with cycles CYCLES in ALPHABET, which may
+     *  contain only cycles and spaces between them. */
+    private static Permutation plugboard(String cycles, Alphabet alphabet) {
+        boolean started = false, hasWords = false;
+        for (int i = 0; i < cycles.length(); ) {
+            int c = cycles.codePointAt(i);
+            if (c == '(') {
+                if (started) {
+                    throw error("previous cycle not yet closed");
+                }
+                started = true;
+            } else if (c == ')') {
+                if (!started) {
+                    throw error("new cycle hasnt started");
+                } else if (!hasWords) {
+                    throw error("no letters found in cycle");
+                }
+                started = false;
+                hasWords = false;
+            } else if (alphabet.indexOf(c) >= 0) {
+                if (!started) {
+                    throw error("cannot have letter outside of cycle");
+                }
+                hasWords = true;
+            } else if (c == ' ' && hasWords) {
+                throw error("cannot have space inside a cycle");
+            } else if (c != ' ') {
+                throw error("character unknown, does not belong in cycles");
+            }
+            i += Character.charCount(c);
+        }
+        return new Permutation(cycles, alphabet);
+    }
+
+    /** Names of the rotors to insert, reflector first. */
+    private final String[] _rotors;
+
+    /** Settings and ring settings of the rotors, indexed by slot. */
+    private final int[] _posns, _rings;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+}
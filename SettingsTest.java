@@ -0,0 +1,63 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Settings class.
+ *  @author Miranda Cheung
+ */
+public class SettingsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the settings given by LINE for a fresh naval machine M. */
+    private static Settings parse(String line, Machine m) {
+        RotorRegistry rotors = new RotorRegistry(UPPER);
+        for (String name : NAVALA.keySet()) {
+            rotors.add(name, 'N', "", "");
+        }
+        return new Settings(line, UPPER, m.numRotors(), rotors);
+    }
+
+    @Test
+    public void testApply() {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        Settings s = parse("* B Beta III IV I  AXLE (YF) (ZH)", m);
+        assertArrayEquals(MachineTest.ROTORS, s.rotors());
+        s.apply(m);
+        assertEquals("SZVGJHUKSG", m.convert("HELLOWORLD"));
+        s.apply(m);
+        assertEquals("SZVGJHUKSG", m.convert("HELLOWORLD"));
+
+        Machine ref = MachineTest.navalMachine(MachineTest.ROTORS,
+                                               "QEZV BCDE", "(HQ)");
+        parse("* B Beta III IV I QEZV BCDE (HQ)", m).apply(m);
+        assertEquals(ref.convert("FROMHISSHOULDER"),
+                     m.convert("FROMHISSHOULDER"));
+        assertArrayEquals(ref.settings(), m.settings());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedRotor() {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        parse("* B Beta III III I AXLE", m);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortSetting() {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        parse("* B Beta III IV I AXL", m);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadPlugboard() {
+        Machine m = MachineTest.navalMachine(MachineTest.ROTORS, "AAAA", "");
+        parse("* B Beta III IV I AXLE (H Q)", m);
+    }
+}
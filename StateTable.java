@@ -0,0 +1,260 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** The complete cycle of substitutions performed by a configured Enigma
+ *  machine.  For a fixed choice of rotors, ring settings, fixed-rotor
+ *  settings and plugboard, the machine's state is just the settings of
+ *  its moving rotors, so there are at most S = (alphabet size)^(pawls)
+ *  states.  A StateTable holds, for each state, the state that follows it
+ *  and the full substitution (plugboard included) performed in it, so
+ *  that converting a character is one step through the successor table
+ *  and one lookup.  Tables can be saved to a file and memory-mapped back
+ *  in, so that configurations in daily use are only built once.  Main
+ *  converts through a StateTable when run with --table.
+ *  @author Miranda Cheung
+ */
+class StateTable {
+
+    /** A table of the substitutions performed by MACHINE, whose rotors
+     *  and plugboard must already be set.  The moving rotors range over
+     *  all their settings; the other rotors keep their current ones.
+     *  The rows are built in parallel. */
+    StateTable(Machine machine) {
+        _machine = machine;
+        _size = machine.alphabet().size();
+        _first = machine.numRotors() - machine.numPawls();
+        long states = 1;
+        for (int k = _first; k < machine.numRotors(); k++) {
+            states *= _size;
+        }
+        if (states * _size > MAX_ENTRIES) {
+            throw error("state table would need %d entries", states * _size);
+        }
+        _numStates = (int) states;
+        int[] next = new int[_numStates];
+        int[] table = new int[_numStates * _size];
+        int[] fixed = machine.settings();
+        IntStream.range(0, _numStates).parallel().forEach(s -> {
+            int[] posns = fixed.clone();
+            decode(s, posns);
+            for (int c = 0; c < _size; c++) {
+                table[s * _size + c] = machine.scramble(c, posns);
+            }
+            machine.whichRotates(posns);
+            next[s] = encode(posns);
+        });
+        _next = IntBuffer.wrap(next);
+        _table = IntBuffer.wrap(table);
+        _fingerprint = fingerprint(machine);
+    }
+
+    /** A table for MACHINE whose contents are NEXT and TABLE, as read
+     *  from a file. */
+    private StateTable(Machine machine, IntBuffer next, IntBuffer table) {
+        _machine = machine;
+        _size = machine.alphabet().size();
+        _first = machine.numRotors() - machine.numPawls();
+        _numStates = next.limit();
+        _next = next;
+        _table = table;
+        _fingerprint = fingerprint(machine);
+    }
+
+    /** Return the number of states in my cycle. */
+    int numStates() {
+        return _numStates;
+    }
+
+    /** Return the state of my machine, given by its current settings. */
+    int state() {
+        return encode(_machine.settings());
+    }
+
+    /** Return the state that follows STATE. */
+    int next(int state) {
+        return _next.get(state);
+    }
+
+    /** Return the conversion of the alphabet index C in state STATE. */
+    int convert(int state, int c) {
+        return _table.get(state * _size + c);
+    }
+
+    /** Replace the LEN alphabet indices starting at MSG[OFF] with their
+     *  encodings/decodings, starting from state STATE, exactly as my
+     *  machine would if it were in that state.  Returns the state after
+     *  the last character. */
+    int convert(int state, int[] msg, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            state = _next.get(state);
+            msg[i] = _table.get(state * _size + msg[i]);
+        }
+        return state;
+    }
+
+    /** Encode/decode the LEN chars starting at IN[OFF] into OUT starting
+     *  at OUT[OUTOFF], exactly as my machine's convert(IN, OFF, LEN, OUT,
+     *  OUTOFF) would, starting from and advancing its current settings.
+     *  Returns the number of chars written.  Alphabets with characters
+     *  outside the Basic Multilingual Plane are left to the machine. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        Alphabet alphabet = _machine.alphabet();
+        if (!alphabet.isBmp()) {
+            return _machine.convert(in, off, len, out, outOff);
+        }
+        int state = state();
+        for (int i = 0; i < len; i++) {
+            int c = alphabet.indexOf(in[off + i]);
+            if (c < 0) {
+                _machine.seek(i);
+                throw error("letter does not exist in alphabet");
+            }
+            state = _next.get(state);
+            out[outOff + i] =
+                (char) alphabet.toCodePoint(_table.get(state * _size + c));
+        }
+        _machine.seek(len);
+        return len;
+    }
+
+    /** Write me to FILE in a form that load can map back in. */
+    void save(File file) {
+        long bytes = 4L * (HEADER + _numStates + (long) _numStates * _size);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            IntBuffer out = map.asIntBuffer();
+            out.put(MAGIC).put(VERSION).put(_size).put(_numStates);
+            out.put((int) (_fingerprint >>> 32)).put((int) _fingerprint);
+            out.put(_next.duplicate().rewind());
+            out.put(_table.duplicate().rewind());
+            map.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return true iff FILE begins as a saved table does. */
+    static boolean isTable(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= 4 * HEADER && raf.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the table stored in FILE by save, which must describe
+     *  MACHINE in its current configuration.  The table is mapped into
+     *  memory rather than read. */
+    static StateTable load(File file, Machine machine) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            IntBuffer in =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .asIntBuffer();
+            if (in.limit() < HEADER || in.get(0) != MAGIC
+                || in.get(1) != VERSION) {
+                throw error("%s is not a state table", file);
+            }
+            int size = in.get(2), numStates = in.get(3);
+            long fingerprint =
+                ((long) in.get(4) << 32) | (in.get(5) & 0xffffffffL);
+            if (size != machine.alphabet().size()
+                || fingerprint != fingerprint(machine)
+                || in.limit() != HEADER + numStates + (long) numStates * size) {
+                throw error("%s does not match the machine settings", file);
+            }
+            IntBuffer next = in.position(HEADER).slice().limit(numStates);
+            IntBuffer table = in.position(HEADER + numStates).slice();
+            return new StateTable(machine, next, table);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Set the settings of the moving rotors in POSNS to those of STATE. */
+    private void decode(int state, int[] posns) {
+        for (int k = posns.length - 1; k >= _first; k--) {
+            posns[k] = state % _size;
+            state /= _size;
+        }
+    }
+
+    /** Return the state in which the moving rotors have settings
+     *  POSNS. */
+    private int encode(int[] posns) {
+        int state = 0;
+        for (int k = _first; k < posns.length; k++) {
+            state = state * _size + posns[k];
+        }
+        return state;
+    }
+
+    /** Return a hash of everything about MACHINE's configuration that
+     *  its state table depends on. */
+    private static long fingerprint(Machine machine) {
+        int size = machine.alphabet().size();
+        int[] posns = machine.settings();
+        long h = 1125899906842597L;
+        for (int k = 0; k < machine.numRotors(); k++) {
+            Rotor r = machine.rotor(k);
+            boolean[] notches = r.notches();
+            boolean moving = k >= machine.numRotors() - machine.numPawls();
+            h = 31 * h + machine.ring(k);
+            h = 31 * h + (moving ? -1 : posns[k]);
+            for (int c = 0; c < size; c++) {
+                h = 31 * h + r.permutation().permute(c);
+                h = 31 * h + (notches != null && notches[c] ? 1 : 0);
+            }
+        }
+        for (int c = 0; c < size; c++) {
+            h = 31 * h + machine.plugboard().permute(c);
+        }
+        return h;
+    }
+
+    /** Identifies a state table file. */
+    private static final int MAGIC = 0x454e5354;
+
+    /** Version of the state table file format. */
+    private static final int VERSION = 1;
+
+    /** Number of ints preceding the successor table in a file. */
+    private static final int HEADER = 6;
+
+    /** Largest number of entries in a substitution table. */
+    private static final long MAX_ENTRIES = 1L << 28;
+
+    /** The machine whose substitutions I hold. */
+    private final Machine _machine;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Slot of the leftmost moving rotor. */
+    private final int _first;
+
+    /** Number of states. */
+    private final int _numStates;
+
+    /** The successor of each state. */
+    private final IntBuffer _next;
+
+    /** Row S of this table, _table[S * _size ...], is the substitution
+     *  performed in state S. */
+    private final IntBuffer _table;
+
+    /** Hash of the configuration of _machine when I was built. */
+    private final long _fingerprint;
+}
@@ -11,7 +11,25 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      MachineTest.class,
+                                      SessionStoreTest.class,
+                                      RotorRegistryTest.class,
+                                      SettingsTest.class,
+                                      ConfigImageTest.class,
+                                      MessageReaderTest.class,
+                                      FileConverterTest.class,
+                                      SectionPoolTest.class,
+                                      MachineProcessorTest.class,
+                                      ByteCipherTest.class,
+                                      CheckpointTest.class,
+                                      BlockArchiveTest.class,
+                                      EnigmaServerTest.class,
+                                      BombeTest.class,
+                                      IocSearchTest.class,
+                                      MainTest.class,
+                                      LoadGeneratorTest.class));
     }
 
 }